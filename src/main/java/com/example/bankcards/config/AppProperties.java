@@ -3,12 +3,18 @@ package com.example.bankcards.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @Component
 @ConfigurationProperties(prefix = "app")
 public class AppProperties {
 
     private Encryption encryption = new Encryption();
     private Security security = new Security();
+    private Transfers transfers = new Transfers();
+    private Cards cards = new Cards();
 
     public Encryption getEncryption() {
         return encryption;
@@ -26,8 +32,31 @@ public class AppProperties {
         this.security = security;
     }
 
+    public Transfers getTransfers() {
+        return transfers;
+    }
+
+    public void setTransfers(Transfers transfers) {
+        this.transfers = transfers;
+    }
+
+    public Cards getCards() {
+        return cards;
+    }
+
+    public void setCards(Cards cards) {
+        this.cards = cards;
+    }
+
     public static class Encryption {
         private String key;
+        private Map<String, String> keys = new LinkedHashMap<>();
+        private String activeKeyId;
+        private String fingerprintKey;
+        private boolean reencryptEnabled = true;
+        private int reencryptChunkSize = 200;
+        private int reencryptRowsPerSecond = 500;
+        private int fingerprintBackfillRowsPerSecond = 500;
 
         public String getKey() {
             return key;
@@ -36,11 +65,72 @@ public class AppProperties {
         public void setKey(String key) {
             this.key = key;
         }
+
+        public Map<String, String> getKeys() {
+            return keys;
+        }
+
+        public void setKeys(Map<String, String> keys) {
+            this.keys = keys;
+        }
+
+        public String getActiveKeyId() {
+            return activeKeyId;
+        }
+
+        public void setActiveKeyId(String activeKeyId) {
+            this.activeKeyId = activeKeyId;
+        }
+
+        public String getFingerprintKey() {
+            return fingerprintKey;
+        }
+
+        public void setFingerprintKey(String fingerprintKey) {
+            this.fingerprintKey = fingerprintKey;
+        }
+
+        public boolean isReencryptEnabled() {
+            return reencryptEnabled;
+        }
+
+        public void setReencryptEnabled(boolean reencryptEnabled) {
+            this.reencryptEnabled = reencryptEnabled;
+        }
+
+        public int getReencryptChunkSize() {
+            return reencryptChunkSize;
+        }
+
+        public void setReencryptChunkSize(int reencryptChunkSize) {
+            this.reencryptChunkSize = reencryptChunkSize;
+        }
+
+        public int getReencryptRowsPerSecond() {
+            return reencryptRowsPerSecond;
+        }
+
+        public void setReencryptRowsPerSecond(int reencryptRowsPerSecond) {
+            this.reencryptRowsPerSecond = reencryptRowsPerSecond;
+        }
+
+        public int getFingerprintBackfillRowsPerSecond() {
+            return fingerprintBackfillRowsPerSecond;
+        }
+
+        public void setFingerprintBackfillRowsPerSecond(int fingerprintBackfillRowsPerSecond) {
+            this.fingerprintBackfillRowsPerSecond = fingerprintBackfillRowsPerSecond;
+        }
     }
 
     public static class Security {
         private Jwt jwt = new Jwt();
         private Cors cors = new Cors();
+        private long userCacheSize = 10000;
+        private Duration userCacheTtl = Duration.ofMinutes(1);
+        private int loginWorkers = 0;
+        private int loginQueueCapacity = 64;
+        private RateLimit rateLimit = new RateLimit();
 
         public Jwt getJwt() {
             return jwt;
@@ -58,10 +148,52 @@ public class AppProperties {
             this.cors = cors;
         }
 
+        public long getUserCacheSize() {
+            return userCacheSize;
+        }
+
+        public void setUserCacheSize(long userCacheSize) {
+            this.userCacheSize = userCacheSize;
+        }
+
+        public Duration getUserCacheTtl() {
+            return userCacheTtl;
+        }
+
+        public void setUserCacheTtl(Duration userCacheTtl) {
+            this.userCacheTtl = userCacheTtl;
+        }
+
+        public int getLoginWorkers() {
+            return loginWorkers;
+        }
+
+        public void setLoginWorkers(int loginWorkers) {
+            this.loginWorkers = loginWorkers;
+        }
+
+        public int getLoginQueueCapacity() {
+            return loginQueueCapacity;
+        }
+
+        public void setLoginQueueCapacity(int loginQueueCapacity) {
+            this.loginQueueCapacity = loginQueueCapacity;
+        }
+
+        public RateLimit getRateLimit() {
+            return rateLimit;
+        }
+
+        public void setRateLimit(RateLimit rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+
         public static class Jwt {
             private String secret;
             private long expiration;
             private long refreshExpiration;
+            private long cacheSize = 10000;
+            private Duration cacheTtl = Duration.ofMinutes(5);
 
             public String getSecret() {
                 return secret;
@@ -86,6 +218,133 @@ public class AppProperties {
             public void setRefreshExpiration(long refreshExpiration) {
                 this.refreshExpiration = refreshExpiration;
             }
+
+            public long getCacheSize() {
+                return cacheSize;
+            }
+
+            public void setCacheSize(long cacheSize) {
+                this.cacheSize = cacheSize;
+            }
+
+            public Duration getCacheTtl() {
+                return cacheTtl;
+            }
+
+            public void setCacheTtl(Duration cacheTtl) {
+                this.cacheTtl = cacheTtl;
+            }
+        }
+
+        public static class RateLimit {
+            private boolean enabled = true;
+            private int authRequests = 10;
+            private Duration authPeriod = Duration.ofMinutes(1);
+            private int authBurst = 5;
+            private int transferRequests = 60;
+            private Duration transferPeriod = Duration.ofMinutes(1);
+            private int transferBurst = 20;
+            private int batchRequests = 2;
+            private Duration batchPeriod = Duration.ofMinutes(1);
+            private int batchBurst = 1;
+            private long maxKeys = 100000;
+            private Duration idleTimeout = Duration.ofMinutes(10);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getAuthRequests() {
+                return authRequests;
+            }
+
+            public void setAuthRequests(int authRequests) {
+                this.authRequests = authRequests;
+            }
+
+            public Duration getAuthPeriod() {
+                return authPeriod;
+            }
+
+            public void setAuthPeriod(Duration authPeriod) {
+                this.authPeriod = authPeriod;
+            }
+
+            public int getAuthBurst() {
+                return authBurst;
+            }
+
+            public void setAuthBurst(int authBurst) {
+                this.authBurst = authBurst;
+            }
+
+            public int getTransferRequests() {
+                return transferRequests;
+            }
+
+            public void setTransferRequests(int transferRequests) {
+                this.transferRequests = transferRequests;
+            }
+
+            public Duration getTransferPeriod() {
+                return transferPeriod;
+            }
+
+            public void setTransferPeriod(Duration transferPeriod) {
+                this.transferPeriod = transferPeriod;
+            }
+
+            public int getTransferBurst() {
+                return transferBurst;
+            }
+
+            public void setTransferBurst(int transferBurst) {
+                this.transferBurst = transferBurst;
+            }
+
+            public int getBatchRequests() {
+                return batchRequests;
+            }
+
+            public void setBatchRequests(int batchRequests) {
+                this.batchRequests = batchRequests;
+            }
+
+            public Duration getBatchPeriod() {
+                return batchPeriod;
+            }
+
+            public void setBatchPeriod(Duration batchPeriod) {
+                this.batchPeriod = batchPeriod;
+            }
+
+            public int getBatchBurst() {
+                return batchBurst;
+            }
+
+            public void setBatchBurst(int batchBurst) {
+                this.batchBurst = batchBurst;
+            }
+
+            public long getMaxKeys() {
+                return maxKeys;
+            }
+
+            public void setMaxKeys(long maxKeys) {
+                this.maxKeys = maxKeys;
+            }
+
+            public Duration getIdleTimeout() {
+                return idleTimeout;
+            }
+
+            public void setIdleTimeout(Duration idleTimeout) {
+                this.idleTimeout = idleTimeout;
+            }
         }
 
         public static class Cors {
@@ -100,4 +359,177 @@ public class AppProperties {
             }
         }
     }
-}
\ No newline at end of file
+
+    public static class Transfers {
+        private Strategy strategy = Strategy.LOCKING;
+        private int lockRetryAttempts = 5;
+        private long lockRetryBackoffMs = 20;
+        private long lockRetryMaxBackoffMs = 500;
+        private int batchChunkSize = 100;
+        private long idempotencyCacheSize = 10000;
+        private Duration idempotencyKeyTtl = Duration.ofHours(24);
+        private int asyncWorkers = 4;
+        private int asyncQueueCapacity = 1000;
+        private Duration asyncSweepAge = Duration.ofSeconds(30);
+        private int asyncSweepBatchSize = 500;
+        private int statsRebuildThreads = 4;
+        private int statsRebuildChunkSize = 1000;
+        private int exportMaxConcurrent = 2;
+        private Duration exportTimeout = Duration.ofHours(1);
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public int getLockRetryAttempts() {
+            return lockRetryAttempts;
+        }
+
+        public void setLockRetryAttempts(int lockRetryAttempts) {
+            this.lockRetryAttempts = lockRetryAttempts;
+        }
+
+        public long getLockRetryBackoffMs() {
+            return lockRetryBackoffMs;
+        }
+
+        public void setLockRetryBackoffMs(long lockRetryBackoffMs) {
+            this.lockRetryBackoffMs = lockRetryBackoffMs;
+        }
+
+        public long getLockRetryMaxBackoffMs() {
+            return lockRetryMaxBackoffMs;
+        }
+
+        public void setLockRetryMaxBackoffMs(long lockRetryMaxBackoffMs) {
+            this.lockRetryMaxBackoffMs = lockRetryMaxBackoffMs;
+        }
+
+        public int getBatchChunkSize() {
+            return batchChunkSize;
+        }
+
+        public void setBatchChunkSize(int batchChunkSize) {
+            this.batchChunkSize = batchChunkSize;
+        }
+
+        public long getIdempotencyCacheSize() {
+            return idempotencyCacheSize;
+        }
+
+        public void setIdempotencyCacheSize(long idempotencyCacheSize) {
+            this.idempotencyCacheSize = idempotencyCacheSize;
+        }
+
+        public Duration getIdempotencyKeyTtl() {
+            return idempotencyKeyTtl;
+        }
+
+        public void setIdempotencyKeyTtl(Duration idempotencyKeyTtl) {
+            this.idempotencyKeyTtl = idempotencyKeyTtl;
+        }
+
+        public int getAsyncWorkers() {
+            return asyncWorkers;
+        }
+
+        public void setAsyncWorkers(int asyncWorkers) {
+            this.asyncWorkers = asyncWorkers;
+        }
+
+        public int getAsyncQueueCapacity() {
+            return asyncQueueCapacity;
+        }
+
+        public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+            this.asyncQueueCapacity = asyncQueueCapacity;
+        }
+
+        public Duration getAsyncSweepAge() {
+            return asyncSweepAge;
+        }
+
+        public void setAsyncSweepAge(Duration asyncSweepAge) {
+            this.asyncSweepAge = asyncSweepAge;
+        }
+
+        public int getAsyncSweepBatchSize() {
+            return asyncSweepBatchSize;
+        }
+
+        public void setAsyncSweepBatchSize(int asyncSweepBatchSize) {
+            this.asyncSweepBatchSize = asyncSweepBatchSize;
+        }
+
+        public int getStatsRebuildThreads() {
+            return statsRebuildThreads;
+        }
+
+        public void setStatsRebuildThreads(int statsRebuildThreads) {
+            this.statsRebuildThreads = statsRebuildThreads;
+        }
+
+        public int getStatsRebuildChunkSize() {
+            return statsRebuildChunkSize;
+        }
+
+        public void setStatsRebuildChunkSize(int statsRebuildChunkSize) {
+            this.statsRebuildChunkSize = statsRebuildChunkSize;
+        }
+
+        public int getExportMaxConcurrent() {
+            return exportMaxConcurrent;
+        }
+
+        public void setExportMaxConcurrent(int exportMaxConcurrent) {
+            this.exportMaxConcurrent = exportMaxConcurrent;
+        }
+
+        public Duration getExportTimeout() {
+            return exportTimeout;
+        }
+
+        public void setExportTimeout(Duration exportTimeout) {
+            this.exportTimeout = exportTimeout;
+        }
+
+        public enum Strategy {
+            LOCKING, // SELECT ... FOR UPDATE обеих карт и изменение баланса в Java
+            ATOMIC   // условные UPDATE со списанием/зачислением в одном запросе
+        }
+    }
+
+    public static class Cards {
+        private int importChunkSize = 1000;
+        private int importThreads = 0;
+        private int importMaxConcurrent = 1;
+
+        public int getImportChunkSize() {
+            return importChunkSize;
+        }
+
+        public void setImportChunkSize(int importChunkSize) {
+            this.importChunkSize = importChunkSize;
+        }
+
+        public int getImportThreads() {
+            return importThreads;
+        }
+
+        public void setImportThreads(int importThreads) {
+            this.importThreads = importThreads;
+        }
+
+        public int getImportMaxConcurrent() {
+            return importMaxConcurrent;
+        }
+
+        public void setImportMaxConcurrent(int importMaxConcurrent) {
+            this.importMaxConcurrent = importMaxConcurrent;
+        }
+    }
+}
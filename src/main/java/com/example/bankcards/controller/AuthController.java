@@ -5,34 +5,30 @@ import com.example.bankcards.dto.AuthenticationResponseDTO;
 import com.example.bankcards.dto.RegisterRequestDTO;
 import com.example.bankcards.dto.UserDTO;
 import com.example.bankcards.security.JwtService;
+import com.example.bankcards.service.AuthenticationService;
 import com.example.bankcards.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/auth")
 @Tag(name = "Аутентификация", description = "API для регистрации и авторизации")
 public class AuthController {
 
-    private final AuthenticationManager authenticationManager;
-    private final UserDetailsService userDetailsService;
+    private final AuthenticationService authenticationService;
     private final JwtService jwtService;
     private final UserService userService;
 
-    public AuthController(AuthenticationManager authenticationManager,
-                          UserDetailsService userDetailsService,
+    public AuthController(AuthenticationService authenticationService,
                           JwtService jwtService,
                           UserService userService) {
-        this.authenticationManager = authenticationManager;
-        this.userDetailsService = userDetailsService;
+        this.authenticationService = authenticationService;
         this.jwtService = jwtService;
         this.userService = userService;
     }
@@ -46,31 +42,10 @@ public class AuthController {
 
     @PostMapping("/login")
     @Operation(summary = "Авторизация пользователя")
-    public ResponseEntity<AuthenticationResponseDTO> login(@RequestBody AuthenticationRequestDTO request) {
-
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
-        );
-
-
-        String role = authentication.getAuthorities().stream()
-                .findFirst()
-                .map(GrantedAuthority::getAuthority)
-                .orElse("ROLE_USER");
-
-
-        String email = authentication.getName();
-
-
-        final String jwtToken = jwtService.generateToken(email, role);
-
-
-        AuthenticationResponseDTO response = new AuthenticationResponseDTO();
-        response.setToken(jwtToken);
-        response.setEmail(email);
-        response.setRole(role.replace("ROLE_", "")); // Убираем префикс ROLE_
-
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<AuthenticationResponseDTO>> login(
+            @RequestBody AuthenticationRequestDTO request) {
+        // Поток Tomcat освобождается на время проверки пароля
+        return authenticationService.authenticate(request).thenApply(ResponseEntity::ok);
     }
 
     @GetMapping("/validate")
@@ -78,13 +53,8 @@ public class AuthController {
     public ResponseEntity<Void> validateToken(@RequestHeader("Authorization") String token) {
         if (token != null && token.startsWith("Bearer ")) {
             String jwt = token.substring(7);
-            try {
-                String username = jwtService.extractUsername(jwt);
-                if (jwtService.validateToken(jwt, username)) {
-                    return ResponseEntity.ok().build();
-                }
-            } catch (Exception e) {
-
+            if (jwtService.parse(jwt).isPresent()) {
+                return ResponseEntity.ok().build();
             }
         }
         return ResponseEntity.status(401).build();
@@ -2,6 +2,7 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardCreateDTO;
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardImportResultDTO;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.service.CardService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -18,6 +19,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 
 @RestController
@@ -40,6 +42,15 @@ public class CardController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdCard);
     }
 
+    @PostMapping("/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Массовый импорт карт из CSV или NDJSON")
+    public ResponseEntity<CardImportResultDTO> importCards(
+            @Parameter(description = "Формат файла: csv или ndjson") @RequestParam(defaultValue = "csv") String format,
+            InputStream body) {
+        return ResponseEntity.ok(cardService.importCards(format, body));
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Получение информации о карте")
     public ResponseEntity<CardDTO> getCard(
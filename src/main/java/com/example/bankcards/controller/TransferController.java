@@ -1,21 +1,33 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.TransferBatchRequestDTO;
+import com.example.bankcards.dto.TransferBatchResultDTO;
+import com.example.bankcards.dto.TransferDTO;
 import com.example.bankcards.dto.TransferRequestDTO;
-import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.dto.TransferSliceDTO;
+import com.example.bankcards.dto.TransferSummaryDTO;
+import com.example.bankcards.service.TransferExporter;
 import com.example.bankcards.service.TransferService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -31,48 +43,123 @@ public class TransferController {
     }
 
     @PostMapping
-    @Operation(summary = "Создание перевода между своими картами")
-    public ResponseEntity<Transfer> createTransfer(@Valid @RequestBody TransferRequestDTO requestDTO) {
-        Transfer transfer = transferService.createTransfer(requestDTO);
+    @Operation(summary = "Создание перевода между своими картами (mode=async - в фоне, ответ 202)")
+    public ResponseEntity<TransferDTO> createTransfer(
+            @Valid @RequestBody TransferRequestDTO requestDTO,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestParam(defaultValue = "sync") String mode) {
+        if ("async".equalsIgnoreCase(mode)) {
+            TransferDTO transfer = transferService.createTransferAsync(requestDTO, idempotencyKey);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(transfer);
+        }
+        if (!"sync".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("Неизвестный режим перевода: " + mode);
+        }
+
+        TransferDTO transfer = transferService.createTransfer(requestDTO, idempotencyKey);
         return ResponseEntity.status(HttpStatus.CREATED).body(transfer);
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Пакетное создание переводов с результатом по каждому переводу")
+    public ResponseEntity<List<TransferBatchResultDTO>> createTransfers(
+            @Valid @RequestBody TransferBatchRequestDTO requestDTO) {
+        List<TransferBatchResultDTO> results = transferService.createTransfers(requestDTO.getTransfers());
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping("/{id}")
-    @Operation(summary = "Получение информации о переводе")
-    public ResponseEntity<Transfer> getTransfer(@PathVariable Long id) {
-        Transfer transfer = transferService.getTransferById(id);
+    @Operation(summary = "Получение информации о переводе, включая статус асинхронного перевода")
+    public ResponseEntity<TransferDTO> getTransfer(@PathVariable Long id) {
+        TransferDTO transfer = transferService.getTransferById(id);
         return ResponseEntity.ok(transfer);
     }
 
     @GetMapping("/card/{cardId}")
     @Operation(summary = "Получение истории переводов по карте")
-    public ResponseEntity<Page<Transfer>> getCardTransfers(
+    public ResponseEntity<Page<TransferDTO>> getCardTransfers(
             @PathVariable Long cardId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "DESC") Sort.Direction direction) {
+            @RequestParam(defaultValue = "DESC") Sort.Direction direction,
+            @RequestParam(required = false) String after) {
 
+        rejectCursor(after, "/api/transfers/card/" + cardId + "/cursor");
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
-        Page<Transfer> transfers = transferService.getTransfersByCard(cardId, pageable);
+        Page<TransferDTO> transfers = transferService.getTransfersByCard(cardId, pageable);
+
+        return ResponseEntity.ok(transfers);
+    }
+
+    @GetMapping("/card/{cardId}/cursor")
+    @Operation(summary = "История переводов по карте по курсору",
+            description = "Всегда от новых к старым, без подсчёта общего количества; пустой after - первая страница")
+    public ResponseEntity<TransferSliceDTO<TransferDTO>> getCardTransfersAfter(
+            @PathVariable Long cardId,
+            @RequestParam(defaultValue = "") String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) Sort.Direction direction) {
+
+        rejectSort(sortBy, direction);
+        TransferSliceDTO<TransferDTO> transfers = transferService.getTransfersByCard(cardId, after, size);
 
         return ResponseEntity.ok(transfers);
     }
 
     @GetMapping
     @Operation(summary = "Получение истории переводов пользователя")
-    public ResponseEntity<Page<Transfer>> getUserTransfers(
+    public ResponseEntity<Page<TransferDTO>> getUserTransfers(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "DESC") Sort.Direction direction) {
+            @RequestParam(defaultValue = "DESC") Sort.Direction direction,
+            @RequestParam(required = false) String after) {
 
+        rejectCursor(after, "/api/transfers/cursor");
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
-        Page<Transfer> transfers = transferService.getUserTransfers(pageable);
+        Page<TransferDTO> transfers = transferService.getUserTransfers(pageable);
 
         return ResponseEntity.ok(transfers);
     }
 
+    @GetMapping("/cursor")
+    @Operation(summary = "История переводов пользователя по курсору",
+            description = "Всегда от новых к старым, без подсчёта общего количества; пустой after - первая страница")
+    public ResponseEntity<TransferSliceDTO<TransferDTO>> getUserTransfersAfter(
+            @RequestParam(defaultValue = "") String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) Sort.Direction direction) {
+
+        rejectSort(sortBy, direction);
+        TransferSliceDTO<TransferDTO> transfers = transferService.getUserTransfers(after, size);
+
+        return ResponseEntity.ok(transfers);
+    }
+
+    @GetMapping("/export")
+    @Operation(summary = "Потоковая выгрузка истории переводов пользователя или карты (csv, ndjson)")
+    public ResponseEntity<StreamingResponseBody> exportTransfers(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Long cardId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            HttpServletRequest request) {
+
+        TransferExporter.Format exportFormat = TransferExporter.Format.of(format);
+        TransferExporter.ExportBody body = transferService.exportTransfers(exportFormat, cardId, from, to);
+        // Если тело так и не будет записано, слот выгрузки освободит завершение асинхронной обработки
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(TransferExporter.class.getName(), body);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, exportFormat.getContentType() + ";charset=UTF-8")
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"transfers." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
     @GetMapping("/card/{cardId}/total-sent")
     @Operation(summary = "Получение общей суммы отправленных переводов с карты")
     public ResponseEntity<BigDecimal> getTotalSentAmount(@PathVariable Long cardId) {
@@ -87,12 +174,48 @@ public class TransferController {
         return ResponseEntity.ok(total);
     }
 
+    @GetMapping("/card/{cardId}/summary")
+    @Operation(summary = "Сводка по переводам карты: суммы, количество, первый и последний перевод")
+    public ResponseEntity<TransferSummaryDTO> getCardSummary(@PathVariable Long cardId) {
+        TransferSummaryDTO summary = transferService.getCardSummary(cardId);
+        return ResponseEntity.ok(summary);
+    }
+
+    @PostMapping("/stats/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Пересчёт статистики переводов по картам (ADMIN)")
+    public ResponseEntity<Integer> rebuildCardStats() {
+        int cards = transferService.rebuildCardStats();
+        return ResponseEntity.ok(cards);
+    }
+
+    @GetMapping("/stats/inconsistent")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Карты, статистика которых расходится с историей переводов (ADMIN)")
+    public ResponseEntity<List<Long>> findInconsistentCardStats() {
+        List<Long> cardIds = transferService.findInconsistentCardStats();
+        return ResponseEntity.ok(cardIds);
+    }
+
     @GetMapping("/recent")
     @Operation(summary = "Получение последних переводов пользователя")
-    public ResponseEntity<List<Transfer>> getRecentTransfers(
+    public ResponseEntity<List<TransferDTO>> getRecentTransfers(
             @RequestParam(defaultValue = "5") int limit) {
 
-        List<Transfer> transfers = transferService.getRecentTransfers(limit);
+        List<TransferDTO> transfers = transferService.getRecentTransfers(limit);
         return ResponseEntity.ok(transfers);
     }
-}
\ No newline at end of file
+
+    // Курсор задаёт позицию в порядке (createdAt DESC, id DESC), с другой сортировкой он не совместим
+    private void rejectSort(String sortBy, Sort.Direction direction) {
+        if (sortBy != null || direction != null) {
+            throw new IllegalArgumentException("История по курсору не поддерживает sortBy и direction");
+        }
+    }
+
+    private void rejectCursor(String after, String cursorPath) {
+        if (after != null) {
+            throw new IllegalArgumentException("История по курсору доступна по " + cursorPath);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/users")  //
@@ -38,6 +39,13 @@ public class UserController {
         return ResponseEntity.ok(users);
     }
 
+    @GetMapping("/cache-stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Статистика кэша пользователей: попадания, промахи, вытеснения")
+    public ResponseEntity<Map<String, Number>> getUserCacheStats() {
+        return ResponseEntity.ok(userService.getUserCacheStats());
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(summary = "Получение пользователя по ID")
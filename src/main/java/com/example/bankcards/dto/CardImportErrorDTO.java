@@ -0,0 +1,42 @@
+package com.example.bankcards.dto;
+
+public class CardImportErrorDTO {
+
+    private int line;
+    private String errorCode;
+    private String message;
+
+    public CardImportErrorDTO() {
+    }
+
+    public CardImportErrorDTO(int line, String errorCode, String message) {
+        this.line = line;
+        this.errorCode = errorCode;
+        this.message = message;
+    }
+
+
+    public int getLine() {
+        return line;
+    }
+
+    public void setLine(int line) {
+        this.line = line;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public class CardImportResultDTO {
+
+    private int total;
+    private int imported;
+    private int failed;
+    // Не больше первых 1000 ошибок; failed считает все
+    private List<CardImportErrorDTO> errors;
+
+    public CardImportResultDTO() {
+    }
+
+    public CardImportResultDTO(int total, int imported, int failed, List<CardImportErrorDTO> errors) {
+        this.total = total;
+        this.imported = imported;
+        this.failed = failed;
+        this.errors = errors;
+    }
+
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public List<CardImportErrorDTO> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<CardImportErrorDTO> errors) {
+        this.errors = errors;
+    }
+}
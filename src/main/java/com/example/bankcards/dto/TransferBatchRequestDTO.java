@@ -0,0 +1,24 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class TransferBatchRequestDTO {
+
+    @NotEmpty(message = "Список переводов не должен быть пустым")
+    @Size(max = 1000, message = "Не более 1000 переводов в одном запросе")
+    @Valid
+    private List<TransferRequestDTO> transfers;
+
+
+    public List<TransferRequestDTO> getTransfers() {
+        return transfers;
+    }
+
+    public void setTransfers(List<TransferRequestDTO> transfers) {
+        this.transfers = transfers;
+    }
+}
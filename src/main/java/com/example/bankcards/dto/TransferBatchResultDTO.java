@@ -0,0 +1,70 @@
+package com.example.bankcards.dto;
+
+public class TransferBatchResultDTO {
+
+    private int index;
+    private String status;
+    private Long transferId;
+    private String errorCode;
+    private String message;
+
+    public TransferBatchResultDTO() {
+    }
+
+    public TransferBatchResultDTO(int index, String status, Long transferId, String errorCode, String message) {
+        this.index = index;
+        this.status = status;
+        this.transferId = transferId;
+        this.errorCode = errorCode;
+        this.message = message;
+    }
+
+    public static TransferBatchResultDTO completed(int index, Long transferId) {
+        return new TransferBatchResultDTO(index, "COMPLETED", transferId, null, null);
+    }
+
+    public static TransferBatchResultDTO failed(int index, String errorCode, String message) {
+        return new TransferBatchResultDTO(index, "FAILED", null, errorCode, message);
+    }
+
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(Long transferId) {
+        this.transferId = transferId;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transfer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public class TransferDTO {
+    private Long id;
+    private Long fromCardId;
+    private String fromCardMasked;
+    private Long toCardId;
+    private String toCardMasked;
+    private BigDecimal amount;
+    private String description;
+    private String status;
+    private String failureReason;
+    private LocalDateTime createdAt;
+
+    public TransferDTO() {
+    }
+
+    // Используется в JPQL-выражениях конструктора TransferRepository
+    public TransferDTO(Long id, Long fromCardId, String fromCardMasked, Long toCardId, String toCardMasked,
+                       BigDecimal amount, String description, String status, String failureReason,
+                       LocalDateTime createdAt) {
+        this.id = id;
+        this.fromCardId = fromCardId;
+        this.fromCardMasked = fromCardMasked;
+        this.toCardId = toCardId;
+        this.toCardMasked = toCardMasked;
+        this.amount = amount;
+        this.description = description;
+        this.status = status;
+        this.failureReason = failureReason;
+        this.createdAt = createdAt;
+    }
+
+    public static TransferDTO from(TransferView view) {
+        return new TransferDTO(view.getId(), view.getFromCardId(), view.getFromCardMasked(),
+                view.getToCardId(), view.getToCardMasked(), view.getAmount(), view.getDescription(),
+                view.getStatus(), view.getFailureReason(), view.getCreatedAt());
+    }
+
+    // Только для перевода с загруженными картами: у ленивых ссылок чтение маски выполнит запрос
+    public static TransferDTO from(Transfer transfer) {
+        Card fromCard = transfer.getFromCard();
+        Card toCard = transfer.getToCard();
+        return new TransferDTO(transfer.getId(), fromCard.getId(), fromCard.getCardNumberMasked(),
+                toCard.getId(), toCard.getCardNumberMasked(), transfer.getAmount(), transfer.getDescription(),
+                transfer.getStatus(), transfer.getFailureReason(), transfer.getCreatedAt());
+    }
+
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getFromCardId() {
+        return fromCardId;
+    }
+
+    public void setFromCardId(Long fromCardId) {
+        this.fromCardId = fromCardId;
+    }
+
+    public String getFromCardMasked() {
+        return fromCardMasked;
+    }
+
+    public void setFromCardMasked(String fromCardMasked) {
+        this.fromCardMasked = fromCardMasked;
+    }
+
+    public Long getToCardId() {
+        return toCardId;
+    }
+
+    public void setToCardId(Long toCardId) {
+        this.toCardId = toCardId;
+    }
+
+    public String getToCardMasked() {
+        return toCardMasked;
+    }
+
+    public void setToCardMasked(String toCardMasked) {
+        this.toCardMasked = toCardMasked;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public void setFailureReason(String failureReason) {
+        this.failureReason = failureReason;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public class TransferSummaryDTO {
+
+    private BigDecimal totalSent;
+    private BigDecimal totalReceived;
+    private long sentCount;
+    private long receivedCount;
+    private LocalDateTime firstTransferAt;
+    private LocalDateTime lastTransferAt;
+
+    public TransferSummaryDTO() {
+    }
+
+    public TransferSummaryDTO(BigDecimal totalSent, BigDecimal totalReceived,
+                              long sentCount, long receivedCount,
+                              LocalDateTime firstTransferAt, LocalDateTime lastTransferAt) {
+        this.totalSent = totalSent;
+        this.totalReceived = totalReceived;
+        this.sentCount = sentCount;
+        this.receivedCount = receivedCount;
+        this.firstTransferAt = firstTransferAt;
+        this.lastTransferAt = lastTransferAt;
+    }
+
+
+    public BigDecimal getTotalSent() {
+        return totalSent;
+    }
+
+    public void setTotalSent(BigDecimal totalSent) {
+        this.totalSent = totalSent;
+    }
+
+    public BigDecimal getTotalReceived() {
+        return totalReceived;
+    }
+
+    public void setTotalReceived(BigDecimal totalReceived) {
+        this.totalReceived = totalReceived;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public void setSentCount(long sentCount) {
+        this.sentCount = sentCount;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public void setReceivedCount(long receivedCount) {
+        this.receivedCount = receivedCount;
+    }
+
+    public LocalDateTime getFirstTransferAt() {
+        return firstTransferAt;
+    }
+
+    public void setFirstTransferAt(LocalDateTime firstTransferAt) {
+        this.firstTransferAt = firstTransferAt;
+    }
+
+    public LocalDateTime getLastTransferAt() {
+        return lastTransferAt;
+    }
+
+    public void setLastTransferAt(LocalDateTime lastTransferAt) {
+        this.lastTransferAt = lastTransferAt;
+    }
+}
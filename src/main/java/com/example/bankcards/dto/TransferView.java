@@ -0,0 +1,28 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Интерфейсная проекция для нативных запросов истории: имена геттеров совпадают с алиасами колонок
+public interface TransferView {
+
+    Long getId();
+
+    Long getFromCardId();
+
+    String getFromCardMasked();
+
+    Long getToCardId();
+
+    String getToCardMasked();
+
+    BigDecimal getAmount();
+
+    String getDescription();
+
+    String getStatus();
+
+    String getFailureReason();
+
+    LocalDateTime getCreatedAt();
+}
@@ -5,6 +5,8 @@ import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -14,6 +16,10 @@ import java.time.LocalDateTime;
 @Table(name = "cards")
 public class Card {
 
+    // Имена ограничений из changelog, по ним различаются ошибки вставки
+    public static final String FINGERPRINT_UNIQUE_KEY = "uk_cards_card_number_fingerprint";
+    public static final String USER_FOREIGN_KEY = "fk_cards_user";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -23,6 +29,11 @@ public class Card {
     @Column(name = "card_number_encrypted", nullable = false)
     private String cardNumberEncrypted;
 
+    // HMAC номера карты (CardNumberFingerprinter); пуст у старых строк до прохода CardFingerprintBackfill
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "card_number_fingerprint", length = 32, unique = true)
+    private byte[] cardNumberFingerprint;
+
     @NotBlank
     @Size(max = 100)
     @Column(name = "card_number_masked", nullable = false)
@@ -49,6 +60,10 @@ public class Card {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    // Тот же user_id только для чтения: id владельца без обращения к ленивой связи
+    @Column(name = "user_id", insertable = false, updatable = false)
+    private Long userId;
+
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
@@ -64,7 +79,7 @@ public class Card {
         this.cardNumberMasked = cardNumberMasked;
         this.holderName = holderName;
         this.expiryDate = expiryDate;
-        this.user = user;
+        setUser(user);
         this.status = CardStatus.ACTIVE;
         this.balance = BigDecimal.ZERO;
     }
@@ -107,6 +122,14 @@ public class Card {
         this.cardNumberEncrypted = cardNumberEncrypted;
     }
 
+    public byte[] getCardNumberFingerprint() {
+        return cardNumberFingerprint;
+    }
+
+    public void setCardNumberFingerprint(byte[] cardNumberFingerprint) {
+        this.cardNumberFingerprint = cardNumberFingerprint;
+    }
+
     public String getCardNumberMasked() {
         return cardNumberMasked;
     }
@@ -154,6 +177,11 @@ public class Card {
 
     public void setUser(User user) {
         this.user = user;
+        this.userId = user != null ? user.getId() : null;
+    }
+
+    public Long getUserId() {
+        return userId;
     }
 
     public LocalDateTime getCreatedAt() {
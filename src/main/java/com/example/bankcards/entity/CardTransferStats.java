@@ -0,0 +1,67 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Агрегаты по проведённым переводам карты. Пишется только нативными upsert-запросами
+// CardTransferStatsRepository в транзакции перевода.
+@Entity
+@Table(name = "card_transfer_stats")
+public class CardTransferStats {
+
+    @Id
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @Column(name = "total_sent", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalSent = BigDecimal.ZERO;
+
+    @Column(name = "sent_count", nullable = false)
+    private long sentCount;
+
+    @Column(name = "total_received", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalReceived = BigDecimal.ZERO;
+
+    @Column(name = "received_count", nullable = false)
+    private long receivedCount;
+
+    @Column(name = "first_transfer_at")
+    private LocalDateTime firstTransferAt;
+
+    @Column(name = "last_transfer_at")
+    private LocalDateTime lastTransferAt;
+
+    public CardTransferStats() {
+    }
+
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public BigDecimal getTotalSent() {
+        return totalSent;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public BigDecimal getTotalReceived() {
+        return totalReceived;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public LocalDateTime getFirstTransferAt() {
+        return firstTransferAt;
+    }
+
+    public LocalDateTime getLastTransferAt() {
+        return lastTransferAt;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "idempotency_keys",
+        uniqueConstraints = {
+                @UniqueConstraint(columnNames = {"user_id", "idempotency_key"})
+        })
+public class IdempotencyKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    @Column(name = "transfer_id", nullable = false)
+    private Long transferId;
+
+    // SHA-256 тела запроса (IdempotencyService.requestHash); null у ключей, записанных до его появления
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "request_hash", length = 32)
+    private byte[] requestHash;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    public IdempotencyKey() {
+    }
+
+    public IdempotencyKey(Long userId, String idempotencyKey, Long transferId, byte[] requestHash) {
+        this.userId = userId;
+        this.idempotencyKey = idempotencyKey;
+        this.transferId = transferId;
+        this.requestHash = requestHash;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Long getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(Long transferId) {
+        this.transferId = transferId;
+    }
+
+    public byte[] getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(byte[] requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
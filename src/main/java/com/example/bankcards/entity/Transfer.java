@@ -7,13 +7,17 @@ import jakarta.validation.constraints.Size;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Entity
 @Table(name = "transfers")
 public class Transfer {
 
+    // IDENTITY отключает JDBC-батчинг вставок, поэтому id выдаются блоками из id_generators
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "transfer_id")
+    @TableGenerator(name = "transfer_id", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "transfers", allocationSize = 50)
     private Long id;
 
     @NotNull
@@ -26,6 +30,13 @@ public class Transfer {
     @JoinColumn(name = "to_card_id", nullable = false)
     private Card toCard;
 
+    // Владельцы карт на момент перевода: история пользователя читается без соединения с cards
+    @Column(name = "from_user_id", nullable = false)
+    private Long fromUserId;
+
+    @Column(name = "to_user_id", nullable = false)
+    private Long toUserId;
+
     @NotNull
     @DecimalMin(value = "0.01", message = "Сумма перевода должна быть больше 0")
     @Column(nullable = false, precision = 15, scale = 2)
@@ -37,6 +48,9 @@ public class Transfer {
     @Column(nullable = false, length = 20)
     private String status = "COMPLETED"; // COMPLETED, FAILED, PENDING
 
+    @Column(name = "failure_reason")
+    private String failureReason;
+
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
@@ -47,6 +61,8 @@ public class Transfer {
     public Transfer(Card fromCard, Card toCard, BigDecimal amount, String description) {
         this.fromCard = fromCard;
         this.toCard = toCard;
+        this.fromUserId = fromCard.getUserId();
+        this.toUserId = toCard.getUserId();
         this.amount = amount;
         this.description = description;
         this.status = "COMPLETED";
@@ -77,6 +93,22 @@ public class Transfer {
         this.toCard = toCard;
     }
 
+    public Long getFromUserId() {
+        return fromUserId;
+    }
+
+    public void setFromUserId(Long fromUserId) {
+        this.fromUserId = fromUserId;
+    }
+
+    public Long getToUserId() {
+        return toUserId;
+    }
+
+    public void setToUserId(Long toUserId) {
+        this.toUserId = toUserId;
+    }
+
     public BigDecimal getAmount() {
         return amount;
     }
@@ -101,6 +133,14 @@ public class Transfer {
         this.status = status;
     }
 
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public void setFailureReason(String failureReason) {
+        this.failureReason = failureReason;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -109,8 +149,10 @@ public class Transfer {
         this.createdAt = createdAt;
     }
 
+    // Колонка timestamp хранит секунды: отбрасываем дробную часть, чтобы ответ по сохранённой
+    // сущности совпадал с прочитанным из БД (MySQL округляет её, а не отбрасывает)
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
     }
 }
\ No newline at end of file
@@ -7,11 +7,13 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,17 +39,42 @@ public interface CardRepository extends JpaRepository<Card, Long> {
     @Query("SELECT c FROM Card c WHERE c.user.id = :userId AND c.status = 'ACTIVE'")
     List<Card> findActiveCardsByUserId(@Param("userId") Long userId);
 
-    Optional<Card> findByCardNumberEncrypted(String cardNumberEncrypted);
+    // Поиск по уникальному индексу card_number_fingerprint, а не по шифротексту без индекса
+    Optional<Card> findByCardNumberFingerprint(byte[] cardNumberFingerprint);
 
-    boolean existsByCardNumberEncrypted(String cardNumberEncrypted);
+    boolean existsByCardNumberFingerprint(byte[] cardNumberFingerprint);
 
     @Query("SELECT COUNT(c) > 0 FROM Card c WHERE c.id = :cardId AND c.user.id = :userId")
     boolean existsByIdAndUserId(@Param("cardId") Long cardId, @Param("userId") Long userId);
 
+    @Query("SELECT c.user.id FROM Card c WHERE c.id = :cardId")
+    Optional<Long> findUserIdById(@Param("cardId") Long cardId);
+
     @Query("SELECT c.balance FROM Card c WHERE c.id = :cardId")
     Optional<BigDecimal> findBalanceById(@Param("cardId") Long cardId);
 
     @Query("SELECT c FROM Card c WHERE c.id = :cardId AND c.user.id = :userId")
     @Lock(LockModeType.PESSIMISTIC_WRITE)  // Исправлено: вместо FOR UPDATE используем аннотацию
     Optional<Card> findByIdAndUserIdForUpdate(@Param("cardId") Long cardId, @Param("userId") Long userId);
-}
\ No newline at end of file
+
+    @Query("SELECT c FROM Card c WHERE c.id IN :cardIds AND c.user.id = :userId ORDER BY c.id")
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Card> findAllByIdInAndUserIdForUpdate(@Param("cardIds") Collection<Long> cardIds,
+                                               @Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "UPDATE cards SET balance = balance - :amount, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE id = :cardId AND user_id = :userId AND status = 'ACTIVE' " +
+            "AND expiry_date >= CURRENT_DATE AND balance >= :amount", nativeQuery = true)
+    int debitIfSufficient(@Param("cardId") Long cardId,
+                          @Param("userId") Long userId,
+                          @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query(value = "UPDATE cards SET balance = balance + :amount, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE id = :cardId AND user_id = :userId AND status = 'ACTIVE' " +
+            "AND expiry_date >= CURRENT_DATE", nativeQuery = true)
+    int creditIfActive(@Param("cardId") Long cardId,
+                       @Param("userId") Long userId,
+                       @Param("amount") BigDecimal amount);
+}
@@ -0,0 +1,32 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardTransferStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Repository
+public interface CardTransferStatsRepository extends JpaRepository<CardTransferStats, Long> {
+
+    // Вызывается под блокировкой строки карты, поэтому обновления одной строки не конкурируют
+    @Modifying
+    @Query(value = "INSERT INTO card_transfer_stats (card_id, total_sent, sent_count, total_received, " +
+            "received_count, first_transfer_at, last_transfer_at) " +
+            "VALUES (:cardId, :sent, :sentCount, :received, :receivedCount, :firstAt, :lastAt) " +
+            "ON DUPLICATE KEY UPDATE total_sent = total_sent + :sent, sent_count = sent_count + :sentCount, " +
+            "total_received = total_received + :received, received_count = received_count + :receivedCount, " +
+            "first_transfer_at = LEAST(COALESCE(first_transfer_at, :firstAt), :firstAt), " +
+            "last_transfer_at = GREATEST(COALESCE(last_transfer_at, :lastAt), :lastAt)", nativeQuery = true)
+    int addActivity(@Param("cardId") Long cardId,
+                    @Param("sent") BigDecimal sent,
+                    @Param("sentCount") long sentCount,
+                    @Param("received") BigDecimal received,
+                    @Param("receivedCount") long receivedCount,
+                    @Param("firstAt") LocalDateTime firstAt,
+                    @Param("lastAt") LocalDateTime lastAt);
+}
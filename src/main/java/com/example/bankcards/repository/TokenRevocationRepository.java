@@ -0,0 +1,22 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.TokenRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, Long> {
+
+    @Query("SELECT r.userId, r.revokedAt FROM TokenRevocation r WHERE r.revokedAt >= :since")
+    List<Object[]> findRevocationsSince(@Param("since") LocalDateTime since);
+
+    @Modifying
+    @Query("DELETE FROM TokenRevocation r WHERE r.revokedAt < :threshold")
+    int deleteRevokedBefore(@Param("threshold") LocalDateTime threshold);
+}
@@ -1,18 +1,106 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferView;
 import com.example.bankcards.entity.Transfer;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransferRepository extends JpaRepository<Transfer, Long> {
 
+    // История новыми-первыми: каждая ветка UNION ALL идёт по своему индексу (..., created_at, id)
+    // и сама ограничивает выборку; перевод между своими картами попадает только в первую ветку
+    String NEWEST_FIRST = " ORDER BY t.created_at DESC, t.id DESC";
+
+    String BEFORE_CURSOR = " AND (t.created_at < :createdAt OR (t.created_at = :createdAt AND t.id < :id))";
+
+    // Колонки TransferView: маски номеров берутся соединением уже отобранной страницы с cards
+    String VIEW_COLUMNS =
+            "SELECT h.id AS id, h.from_card_id AS fromCardId, fc.card_number_masked AS fromCardMasked, " +
+            "h.to_card_id AS toCardId, tc.card_number_masked AS toCardMasked, h.amount AS amount, " +
+            "h.description AS description, h.status AS status, h.failure_reason AS failureReason, " +
+            "h.created_at AS createdAt FROM (";
+
+    String WITH_CARDS = ") h JOIN cards fc ON fc.id = h.from_card_id JOIN cards tc ON tc.id = h.to_card_id";
+
+    String USER_HISTORY =
+            VIEW_COLUMNS +
+            "(SELECT t.* FROM transfers t WHERE t.from_user_id = :userId" + NEWEST_FIRST + " LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_user_id = :userId AND t.from_user_id <> :userId" +
+            NEWEST_FIRST + " LIMIT :limit)" +
+            WITH_CARDS + " ORDER BY h.created_at DESC, h.id DESC";
+
+    String USER_HISTORY_COUNT =
+            "SELECT (SELECT COUNT(*) FROM transfers WHERE from_user_id = :userId) + " +
+            "(SELECT COUNT(*) FROM transfers WHERE to_user_id = :userId AND from_user_id <> :userId)";
+
+    String USER_HISTORY_BEFORE =
+            VIEW_COLUMNS +
+            "(SELECT t.* FROM transfers t WHERE t.from_user_id = :userId" + BEFORE_CURSOR +
+            NEWEST_FIRST + " LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_user_id = :userId AND t.from_user_id <> :userId" +
+            BEFORE_CURSOR + NEWEST_FIRST + " LIMIT :limit)" +
+            WITH_CARDS + " ORDER BY h.created_at DESC, h.id DESC LIMIT :limit";
+
+    String CARD_HISTORY =
+            VIEW_COLUMNS +
+            "(SELECT t.* FROM transfers t WHERE t.from_card_id = :cardId" + NEWEST_FIRST + " LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_card_id = :cardId AND t.from_card_id <> :cardId" +
+            NEWEST_FIRST + " LIMIT :limit)" +
+            WITH_CARDS + " ORDER BY h.created_at DESC, h.id DESC";
+
+    String CARD_HISTORY_COUNT =
+            "SELECT (SELECT COUNT(*) FROM transfers WHERE from_card_id = :cardId) + " +
+            "(SELECT COUNT(*) FROM transfers WHERE to_card_id = :cardId AND from_card_id <> :cardId)";
+
+    String CARD_HISTORY_BEFORE =
+            VIEW_COLUMNS +
+            "(SELECT t.* FROM transfers t WHERE t.from_card_id = :cardId" + BEFORE_CURSOR +
+            NEWEST_FIRST + " LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_card_id = :cardId AND t.from_card_id <> :cardId" +
+            BEFORE_CURSOR + NEWEST_FIRST + " LIMIT :limit)" +
+            WITH_CARDS + " ORDER BY h.created_at DESC, h.id DESC LIMIT :limit";
+
+    // Выгрузка без общей сортировки: ветки читаются по индексу (..., created_at, id) подряд,
+    // поэтому MySQL отдаёт строки потоком без временной таблицы
+    String USER_EXPORT =
+            "(SELECT t.* FROM transfers t WHERE t.from_user_id = :userId " +
+            "AND t.created_at >= :from AND t.created_at < :to) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_user_id = :userId AND t.from_user_id <> :userId " +
+            "AND t.created_at >= :from AND t.created_at < :to)";
+
+    String CARD_EXPORT =
+            "(SELECT t.* FROM transfers t WHERE t.from_card_id = :cardId " +
+            "AND t.created_at >= :from AND t.created_at < :to) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_card_id = :cardId AND t.from_card_id <> :cardId " +
+            "AND t.created_at >= :from AND t.created_at < :to)";
+
+    String TRANSFER_DTO =
+            "SELECT new com.example.bankcards.dto.TransferDTO(t.id, fc.id, fc.cardNumberMasked, " +
+            "tc.id, tc.cardNumberMasked, t.amount, t.description, t.status, t.failureReason, t.createdAt) " +
+            "FROM Transfer t JOIN t.fromCard fc JOIN t.toCard tc ";
+
     List<Transfer> findByFromCardId(Long fromCardId);
 
     List<Transfer> findByToCardId(Long toCardId);
@@ -20,18 +108,67 @@ public interface TransferRepository extends JpaRepository<Transfer, Long> {
     @Query("SELECT t FROM Transfer t WHERE t.fromCard.id = :cardId OR t.toCard.id = :cardId")
     Page<Transfer> findByFromCardIdOrToCardId(@Param("cardId") Long cardId, Pageable pageable);
 
-    @Query("SELECT t FROM Transfer t WHERE t.fromCard.user.id = :userId OR t.toCard.user.id = :userId")
-    Page<Transfer> findByUserId(@Param("userId") Long userId, Pageable pageable);
+    @Query(TRANSFER_DTO + "WHERE t.id = :id")
+    Optional<TransferDTO> findDtoById(@Param("id") Long id);
+
+    @Query(TRANSFER_DTO + "WHERE t.id = :id AND (t.fromUserId = :userId OR t.toUserId = :userId)")
+    Optional<TransferDTO> findDtoByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    // Сортировка отличная от новых-первыми: условие по денормализованным владельцам
+    @Query(value = TRANSFER_DTO + "WHERE t.fromUserId = :userId OR t.toUserId = :userId",
+            countQuery = "SELECT COUNT(t) FROM Transfer t WHERE t.fromUserId = :userId OR t.toUserId = :userId")
+    Page<TransferDTO> findDtoByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(value = TRANSFER_DTO + "WHERE fc.id = :cardId OR tc.id = :cardId",
+            countQuery = "SELECT COUNT(t) FROM Transfer t WHERE t.fromCard.id = :cardId OR t.toCard.id = :cardId")
+    Page<TransferDTO> findDtoByCardId(@Param("cardId") Long cardId, Pageable pageable);
+
+    // limit - сколько строк нужно с начала истории (offset + размер страницы)
+    @Query(value = USER_HISTORY, countQuery = USER_HISTORY_COUNT, nativeQuery = true)
+    Page<TransferView> findUserHistory(@Param("userId") Long userId, @Param("limit") long limit, Pageable pageable);
+
+    @Query(value = USER_HISTORY_BEFORE, nativeQuery = true)
+    List<TransferView> findUserHistoryBefore(@Param("userId") Long userId,
+                                             @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id,
+                                             @Param("limit") int limit);
+
+    @Query(value = CARD_HISTORY, countQuery = CARD_HISTORY_COUNT, nativeQuery = true)
+    Page<TransferView> findCardHistory(@Param("cardId") Long cardId, @Param("limit") long limit, Pageable pageable);
+
+    @Query(value = CARD_HISTORY_BEFORE, nativeQuery = true)
+    List<TransferView> findCardHistoryBefore(@Param("cardId") Long cardId,
+                                             @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id,
+                                             @Param("limit") int limit);
+
+    // Integer.MIN_VALUE переключает MySQL Connector/J в построчное чтение результата
+    @Query(value = USER_EXPORT, nativeQuery = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Transfer> streamUserTransfers(@Param("userId") Long userId,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to);
 
+    @Query(value = CARD_EXPORT, nativeQuery = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Transfer> streamCardTransfers(@Param("cardId") Long cardId,
+                                         @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to);
 
-    @Query("SELECT t FROM Transfer t " +
-            "JOIN t.fromCard fc " +
-            "JOIN t.toCard tc " +
-            "WHERE fc.user.id = :userId OR tc.user.id = :userId")
-    Page<Transfer> findAllUserTransfers(@Param("userId") Long userId, Pageable pageable);
+    @Query("SELECT t FROM Transfer t WHERE t.id = :id")
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Transfer> findByIdForUpdate(@Param("id") Long id);
 
+    @Query("SELECT t FROM Transfer t WHERE t.status = 'PENDING' AND t.createdAt < :before ORDER BY t.createdAt, t.id")
+    List<Transfer> findPendingCreatedBefore(@Param("before") LocalDateTime before, Pageable pageable);
 
-    @Query("SELECT t FROM Transfer t WHERE t.fromCard.id = :cardId OR t.toCard.id = :cardId " +
-            "ORDER BY t.createdAt DESC")
-    Page<Transfer> findByCardId(@Param("cardId") Long cardId, Pageable pageable);
-}
\ No newline at end of file
+    // Все ожидающие списания с карты в порядке создания, без учёта возраста
+    @Query("SELECT t FROM Transfer t WHERE t.status = 'PENDING' AND t.fromCard.id = :cardId ORDER BY t.createdAt, t.id")
+    List<Transfer> findPendingByFromCardId(@Param("cardId") Long cardId, Pageable pageable);
+}
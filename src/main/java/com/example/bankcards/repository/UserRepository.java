@@ -1,17 +1,36 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    // Роли EAGER: без графа Hibernate дочитывает их вторым запросом
+    @EntityGraph(attributePaths = "roles")
     Optional<User> findByEmail(String email);
 
     boolean existsByEmail(String email);
 
+    @EntityGraph(attributePaths = "roles")
+    @Query("SELECT u FROM User u ORDER BY u.id")
+    List<User> findAllWithRoles();
 
+    @EntityGraph(attributePaths = "roles")
+    List<User> findByEmailContainingIgnoreCaseOrderById(String email);
+
+    @Query("SELECT COUNT(u) FROM User u WHERE :role MEMBER OF u.roles")
+    long countByRole(@Param("role") Role role);
+
+    @Query("SELECT u.id, u.tokensRevokedAt FROM User u WHERE u.tokensRevokedAt >= :since")
+    List<Object[]> findTokenRevocationsSince(@Param("since") LocalDateTime since);
 }
\ No newline at end of file
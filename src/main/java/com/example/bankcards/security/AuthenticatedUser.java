@@ -0,0 +1,14 @@
+package com.example.bankcards.security;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+/**
+ * Principal запроса, собранный из проверенных claims токена без обращения к БД.
+ */
+public record AuthenticatedUser(Long id, String email) implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
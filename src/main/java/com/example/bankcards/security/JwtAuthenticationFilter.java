@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -16,6 +17,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -24,10 +26,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final TokenDenylist tokenDenylist;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService,
+                                   UserDetailsService userDetailsService,
+                                   TokenDenylist tokenDenylist) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.tokenDenylist = tokenDenylist;
     }
 
     @Override
@@ -53,21 +59,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         logger.debug("JWT Filter - Extracted token: {}...", jwt.substring(0, Math.min(20, jwt.length())));
 
         try {
-            userEmail = jwtService.extractUsername(jwt);
+            // Подпись и срок действия проверяются один раз, повторные запросы берут claims из кэша
+            JwtClaims claims = jwtService.verify(jwt).orElse(null);
+            userEmail = claims != null ? claims.subject() : null;
             logger.debug("JWT Filter - Extracted username: {}", userEmail);
 
             if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                logger.debug("JWT Filter - Loading user details for: {}", userEmail);
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-                logger.debug("JWT Filter - User details loaded, authorities: {}", userDetails.getAuthorities());
-
-                if (jwtService.validateToken(jwt, userDetails)) {
-                    logger.debug("JWT Filter - Token is valid, setting authentication");
-                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
-                            null,
-                            userDetails.getAuthorities()
-                    );
+                UsernamePasswordAuthenticationToken authToken = claims.userId() != null
+                        ? fromClaims(claims)
+                        : fromUserDetails(userEmail);
+
+                if (authToken != null) {
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                     logger.debug("JWT Filter - Authentication set in SecurityContext");
@@ -76,7 +78,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 }
             } else {
                 if (userEmail == null) {
-                    logger.warn("JWT Filter - Could not extract username from token");
+                    logger.warn("JWT Filter - Invalid or expired token");
                 } else {
                     logger.debug("JWT Filter - Authentication already exists in context");
                 }
@@ -87,4 +89,28 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    // Principal строится только из claims, БД не читается; отзыв проверяется по денилисту в памяти
+    private UsernamePasswordAuthenticationToken fromClaims(JwtClaims claims) {
+        if (tokenDenylist.isRevoked(claims.userId(), claims.issuedAt())) {
+            logger.debug("JWT Filter - Token revoked for user id {}", claims.userId());
+            return null;
+        }
+
+        List<SimpleGrantedAuthority> authorities = claims.roles().stream()
+                .map(SimpleGrantedAuthority::new)
+                .toList();
+        return new UsernamePasswordAuthenticationToken(
+                new AuthenticatedUser(claims.userId(), claims.subject()), null, authorities);
+    }
+
+    // Токены, выданные до появления claim uid, проверяются по БД, пока не истекут
+    private UsernamePasswordAuthenticationToken fromUserDetails(String userEmail) {
+        logger.debug("JWT Filter - Loading user details for: {}", userEmail);
+        UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+        if (!userDetails.isEnabled()) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
 }
\ No newline at end of file
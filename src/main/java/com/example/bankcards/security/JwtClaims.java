@@ -0,0 +1,16 @@
+package com.example.bankcards.security;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Проверенные claims токена. Создаётся один раз на запрос в {@link JwtService#parse(String)}.
+ * userId равен null у токенов, выданных до появления claim uid.
+ */
+public record JwtClaims(String subject, Long userId, List<String> roles, String role,
+                        Date issuedAt, Date expiration) {
+
+    public boolean isExpired(Date now) {
+        return expiration != null && expiration.before(now);
+    }
+}
@@ -1,136 +1,142 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Optional;
 
 @Service
 public class JwtService {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtService.class);
 
-    @Value("${app.security.jwt.secret}")
-    private String secretKey;
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLES_CLAIM = "roles";
+    private static final String ROLE_CLAIM = "role";
+
+    // Ключ и парсер неизменяемы и потокобезопасны, строим их один раз
+    private final Key signKey;
+    private final JwtParser parser;
+    private final long expirationMillis;
+    // Ключ — SHA-256 токена, чтобы не держать сами токены в памяти
+    private final Cache<String, JwtClaims> verifiedTokens;
+
+    public JwtService(AppProperties appProperties) {
+        AppProperties.Security.Jwt settings = appProperties.getSecurity().getJwt();
+        this.signKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(settings.getSecret()));
+        this.parser = Jwts.parserBuilder().setSigningKey(signKey).build();
+        this.expirationMillis = settings.getExpiration();
+        this.verifiedTokens = CacheBuilder.newBuilder()
+                .maximumSize(settings.getCacheSize())
+                .expireAfterWrite(settings.getCacheTtl())
+                .build();
+    }
 
-    public String extractUsername(String token) {
-        try {
-            String username = extractClaim(token, Claims::getSubject);
-            logger.debug("Extracted username from token: {}", username);
-            return username;
-        } catch (Exception e) {
-            logger.error("Error extracting username from token: {}", e.getMessage());
-            return null;
+    // Повторный токен не проверяется заново, но exp сверяется при каждом обращении к кэшу
+    public Optional<JwtClaims> verify(String token) {
+        String digest = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        JwtClaims cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            if (!cached.isExpired(new Date())) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.invalidate(digest);
+            return Optional.empty();
         }
+
+        Optional<JwtClaims> claims = parse(token);
+        claims.ifPresent(verified -> verifiedTokens.put(digest, verified));
+        return claims;
     }
 
-    public String extractRole(String token) {
+    // Подпись и срок действия проверяются за один разбор; пусто, если токен недействителен
+    public Optional<JwtClaims> parse(String token) {
         try {
-            String role = extractClaim(token, claims -> claims.get("role", String.class));
-            logger.debug("Extracted role from token: {}", role);
-            return role;
-        } catch (Exception e) {
-            logger.error("Error extracting role from token: {}", e.getMessage());
-            return null;
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Number userId = claims.get(USER_ID_CLAIM, Number.class);
+            List<?> roles = claims.get(ROLES_CLAIM, List.class);
+            return Optional.of(new JwtClaims(claims.getSubject(),
+                    userId != null ? userId.longValue() : null,
+                    roles != null ? roles.stream().map(String::valueOf).toList() : List.of(),
+                    claims.get(ROLE_CLAIM, String.class),
+                    claims.getIssuedAt(), claims.getExpiration()));
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.debug("Rejected JWT: {}", e.getMessage());
+            return Optional.empty();
         }
     }
 
-    public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+    public String extractUsername(String token) {
+        return parse(token).map(JwtClaims::subject).orElse(null);
     }
 
-    private Claims extractAllClaims(String token) {
-        try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getSignKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-        } catch (Exception e) {
-            logger.error("Error parsing JWT claims: {}", e.getMessage());
-            throw e;
-        }
+    public String extractRole(String token) {
+        return parse(token).map(JwtClaims::role).orElse(null);
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public Date extractExpiration(String token) {
+        return parse(token).map(JwtClaims::expiration).orElse(null);
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        try {
-            final String username = extractUsername(token);
-            boolean isValid = (username != null &&
-                    username.equals(userDetails.getUsername()) &&
-                    !isTokenExpired(token));
-
-            logger.debug("Token validation for user {}: {}", username, isValid);
-            return isValid;
-        } catch (Exception e) {
-            logger.error("Token validation error: {}", e.getMessage());
-            return false;
-        }
+        return validateToken(token, userDetails.getUsername());
     }
 
     public Boolean validateToken(String token, String username) {
-        try {
-            final String tokenUsername = extractUsername(token);
-            boolean isValid = (tokenUsername != null &&
-                    tokenUsername.equals(username) &&
-                    !isTokenExpired(token));
-
-            logger.debug("Token validation for username {}: {}", username, isValid);
-            return isValid;
-        } catch (Exception e) {
-            logger.error("Token validation error: {}", e.getMessage());
-            return false;
-        }
+        boolean isValid = parse(token)
+                .filter(claims -> claims.subject() != null && claims.subject().equals(username))
+                .isPresent();
+
+        logger.debug("Token validation for username {}: {}", username, isValid);
+        return isValid;
     }
 
-    public String generateToken(String userName, String role) {
+    // uid и роли в токене позволяют аутентифицировать запрос без чтения users
+    public String generateToken(User user) {
+        List<String> roles = user.getRoles().stream().map(Role::name).sorted().toList();
+        String role = roles.contains(Role.ROLE_ADMIN.name()) ? Role.ROLE_ADMIN.name() : Role.ROLE_USER.name();
+
         Map<String, Object> claims = new HashMap<>();
-        claims.put("role", role);
+        claims.put(USER_ID_CLAIM, user.getId());
+        claims.put(ROLES_CLAIM, roles);
+        claims.put(ROLE_CLAIM, role);
 
-        String token = createToken(claims, userName);
-        logger.debug("Generated token for user {} with role {}: {}...",
-                userName, role, token.substring(0, Math.min(20, token.length())));
+        String token = createToken(claims, user.getEmail());
+        logger.debug("Generated token for user {} with roles {}: {}...",
+                user.getEmail(), roles, token.substring(0, Math.min(20, token.length())));
 
         return token;
     }
 
     private String createToken(Map<String, Object> claims, String userName) {
+        long now = System.currentTimeMillis();
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(userName)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 24)) // 24 часа
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + expirationMillis))
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
     }
-
-    private Key getSignKey() {
-        try {
-            byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-            return Keys.hmacShaKeyFor(keyBytes);
-        } catch (Exception e) {
-            logger.error("Error creating sign key: {}", e.getMessage());
-            throw e;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.exception.ServiceBusyException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка паролей BCrypt в отдельном пуле. Потоки и очередь ограничены: при всплеске логинов
+ * лишние запросы сразу получают 503, а потоки Tomcat остаются картам и переводам.
+ */
+@Component
+public class PasswordCheckExecutor {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    // Для неизвестного email пароль сверяется с фиктивным хэшем, чтобы время ответа не выдавало наличие пользователя
+    private final String dummyHash;
+
+    public PasswordCheckExecutor(PasswordEncoder passwordEncoder, AppProperties appProperties) {
+        this.passwordEncoder = passwordEncoder;
+
+        AppProperties.Security settings = appProperties.getSecurity();
+        int workers = settings.getLoginWorkers() > 0
+                ? settings.getLoginWorkers()
+                : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.getLoginQueueCapacity())),
+                new ThreadFactoryBuilder().setNameFormat("login-bcrypt-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.dummyHash = passwordEncoder.encode(UUID.randomUUID().toString());
+    }
+
+    // encodedPassword == null означает, что пользователь не найден: результат всегда false
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        String hash = encodedPassword != null ? encodedPassword : dummyHash;
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> passwordEncoder.matches(rawPassword, hash) && encodedPassword != null, executor);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceBusyException("Слишком много одновременных входов, повторите позже", 1);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
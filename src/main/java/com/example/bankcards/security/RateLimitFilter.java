@@ -0,0 +1,119 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.exception.GlobalExceptionHandler.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение частоты до аутентификации: логин и регистрация — по IP, создание переводов — по пользователю.
+ * IP берётся из getRemoteAddr(), за прокси он восстанавливается из X-Forwarded-For (server.forward-headers-strategy).
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final RateLimiter authLimiter;
+    private final RateLimiter transferLimiter;
+    private final RateLimiter batchLimiter;
+
+    public RateLimitFilter(AppProperties appProperties, JwtService jwtService, ObjectMapper objectMapper) {
+        AppProperties.Security.RateLimit rateLimit = appProperties.getSecurity().getRateLimit();
+        this.jwtService = jwtService;
+        this.objectMapper = objectMapper;
+        this.enabled = rateLimit.isEnabled();
+        this.authLimiter = new RateLimiter(rateLimit.getAuthRequests(), rateLimit.getAuthPeriod(),
+                rateLimit.getAuthBurst(), rateLimit.getMaxKeys(), rateLimit.getIdleTimeout(), System::nanoTime);
+        this.transferLimiter = new RateLimiter(rateLimit.getTransferRequests(), rateLimit.getTransferPeriod(),
+                rateLimit.getTransferBurst(), rateLimit.getMaxKeys(), rateLimit.getIdleTimeout(), System::nanoTime);
+        this.batchLimiter = new RateLimiter(rateLimit.getBatchRequests(), rateLimit.getBatchPeriod(),
+                rateLimit.getBatchBurst(), rateLimit.getMaxKeys(), rateLimit.getIdleTimeout(), System::nanoTime);
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        long waitNanos = enabled ? acquire(request) : 0;
+        if (waitNanos > 0) {
+            reject(request, response, waitNanos);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private long acquire(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return 0;
+        }
+
+        String uri = request.getRequestURI();
+        if ("/api/auth/login".equals(uri) || "/api/auth/register".equals(uri)) {
+            return authLimiter.tryAcquire(uri + '|' + request.getRemoteAddr());
+        }
+        // Пакет несёт до тысячи переводов, поэтому у него своя, более строгая корзина
+        if ("/api/transfers".equals(uri)) {
+            return acquireForUser(transferLimiter, request);
+        }
+        if ("/api/transfers/batch".equals(uri)) {
+            return acquireForUser(batchLimiter, request);
+        }
+        return 0;
+    }
+
+    // Без валидного токена запрос всё равно получит 401, не дойдя до БД
+    private long acquireForUser(RateLimiter limiter, HttpServletRequest request) {
+        String userKey = userKey(request);
+        return userKey != null ? limiter.tryAcquire(userKey) : 0;
+    }
+
+    // Проверенный токен попадает в кэш JwtService, и JwtAuthenticationFilter его повторно не проверяет
+    private String userKey(HttpServletRequest request) {
+        String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        return jwtService.verify(authHeader.substring(BEARER_PREFIX.length()))
+                .map(claims -> claims.userId() != null ? "uid:" + claims.userId() : "sub:" + claims.subject())
+                .orElse(null);
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, long waitNanos)
+            throws IOException {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Слишком много запросов",
+                "Превышен лимит запросов, повторите позже",
+                "uri=" + request.getRequestURI()
+        );
+        objectMapper.writeValue(response.getWriter(), errorResponse);
+    }
+}
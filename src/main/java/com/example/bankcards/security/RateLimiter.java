@@ -0,0 +1,60 @@
+package com.example.bankcards.security;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничитель частоты по алгоритму GCRA: на ключ хранится одно время ожидаемого прихода (TAT),
+ * обновляемое через CAS без блокировок.
+ */
+public class RateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier nanoClock;
+    private final LoadingCache<String, AtomicLong> buckets;
+
+    public RateLimiter(int requests, Duration period, int burst,
+                       long maxKeys, Duration idleTimeout, LongSupplier nanoClock) {
+        if (requests <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Лимит и всплеск должны быть положительными");
+        }
+        this.emissionIntervalNanos = period.toNanos() / requests;
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.nanoClock = nanoClock;
+
+        // Вытеснять раньше полного восстановления корзины нельзя: клиент получил бы всплеск заново
+        Duration refill = Duration.ofNanos(emissionIntervalNanos * burst);
+        this.buckets = CacheBuilder.newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 4)
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout.compareTo(refill) > 0 ? idleTimeout : refill)
+                .build(CacheLoader.from(key -> new AtomicLong(Long.MIN_VALUE)));
+    }
+
+    // 0 — запрос пропущен, иначе через сколько наносекунд клиенту стоит повторить
+    public long tryAcquire(String key) {
+        AtomicLong tat = buckets.getUnchecked(key);
+        long now = nanoClock.getAsLong();
+        while (true) {
+            long current = tat.get();
+            long start = Math.max(current, now);
+            long wait = start - now - burstToleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, start + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public long size() {
+        return buckets.size();
+    }
+}
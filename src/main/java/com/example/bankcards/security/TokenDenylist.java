@@ -0,0 +1,87 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.TokenRevocation;
+import com.example.bankcards.repository.TokenRevocationRepository;
+import com.example.bankcards.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отозванные токены в памяти узла: user id → момент отзыва (users.tokens_revoked_at,
+ * а для удалённых пользователей token_revocations). Хранятся только отзывы моложе срока
+ * жизни токена, более старые уже ничего не отсекают. Изменения с других узлов
+ * подтягиваются периодическим обновлением.
+ */
+@Component
+public class TokenDenylist {
+
+    private final UserRepository userRepository;
+    private final TokenRevocationRepository tokenRevocationRepository;
+    private final long tokenLifetimeMillis;
+    private final Map<Long, Long> revokedAtSeconds = new ConcurrentHashMap<>();
+
+    public TokenDenylist(UserRepository userRepository,
+                         TokenRevocationRepository tokenRevocationRepository,
+                         AppProperties appProperties) {
+        this.userRepository = userRepository;
+        this.tokenRevocationRepository = tokenRevocationRepository;
+        this.tokenLifetimeMillis = appProperties.getSecurity().getJwt().getExpiration();
+    }
+
+    // iat в токене с точностью до секунды, поэтому по нему не отличить токен, выданный в секунду
+    // отзыва до него, от выданного после: отклоняются оба. Вход в ту же секунду придётся повторить.
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        Long revokedAt = revokedAtSeconds.get(userId);
+        return revokedAt != null && (issuedAt == null || issuedAt.getTime() / 1000 <= revokedAt);
+    }
+
+    // Локальный отзыв действует сразу, остальные узлы увидят его после обновления
+    public void revoke(Long userId, LocalDateTime revokedAt) {
+        revokedAtSeconds.merge(userId, toEpochSeconds(revokedAt), Math::max);
+    }
+
+    // Строка пользователя удаляется в той же транзакции, поэтому отзыв сохраняется отдельно
+    public void revokeDeleted(Long userId, LocalDateTime revokedAt) {
+        tokenRevocationRepository.save(new TokenRevocation(userId, revokedAt));
+        revoke(userId, revokedAt);
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void refresh() {
+        long horizon = System.currentTimeMillis() - tokenLifetimeMillis;
+        LocalDateTime since = horizonTime(horizon);
+
+        for (Object[] row : userRepository.findTokenRevocationsSince(since)) {
+            revoke((Long) row[0], (LocalDateTime) row[1]);
+        }
+        for (Object[] row : tokenRevocationRepository.findRevocationsSince(since)) {
+            revoke((Long) row[0], (LocalDateTime) row[1]);
+        }
+        revokedAtSeconds.values().removeIf(revokedAt -> revokedAt * 1000 < horizon);
+    }
+
+    // Отзывы старше срока жизни токена больше ничего не отсекают
+    @Scheduled(fixedDelay = 3600000, initialDelay = 60000)
+    @Transactional
+    public void purgeExpiredRevocations() {
+        tokenRevocationRepository.deleteRevokedBefore(horizonTime(System.currentTimeMillis() - tokenLifetimeMillis));
+    }
+
+    private LocalDateTime horizonTime(long epochMillis) {
+        return LocalDateTime.ofInstant(new Date(epochMillis).toInstant(), ZoneId.systemDefault());
+    }
+
+    private long toEpochSeconds(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
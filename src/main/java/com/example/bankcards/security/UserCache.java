@@ -0,0 +1,72 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Кэш пользователей по email для SecurityUtils.getCurrentUser: профиль и владелец новой карты.
+ * Сброс через {@link #evict(String)} локален, другие узлы видят изменения только по истечении TTL,
+ * поэтому пароль, enabled и роли отсюда не проверяются — логин и UserDetailsService читают users.
+ * Закэшированные сущности отсоединены от сессии и общие для потоков, их нельзя изменять.
+ */
+@Component
+public class UserCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, User> users;
+
+    public UserCache(UserRepository userRepository, AppProperties appProperties) {
+        this.userRepository = userRepository;
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(appProperties.getSecurity().getUserCacheSize())
+                .expireAfterWrite(appProperties.getSecurity().getUserCacheTtl())
+                .recordStats()
+                .build();
+    }
+
+    public Optional<User> findByEmail(String email) {
+        User user = users.getIfPresent(email);
+        if (user != null) {
+            return Optional.of(user);
+        }
+
+        Optional<User> loaded = userRepository.findByEmail(email);
+        loaded.ifPresent(found -> users.put(email, found));
+        return loaded;
+    }
+
+    // Сбрасываем сразу и ещё раз после коммита, чтобы параллельное чтение не вернуло старую строку
+    public void evict(String email) {
+        users.invalidate(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    users.invalidate(email);
+                }
+            });
+        }
+    }
+
+    public Map<String, Number> getStats() {
+        CacheStats stats = users.stats();
+        Map<String, Number> result = new LinkedHashMap<>();
+        result.put("size", users.size());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("hitRate", stats.hitRate());
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.repository.TransferRepository;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Очереди асинхронных переводов. Перевод попадает в очередь по id исходной карты,
+ * поэтому списания с одной карты выполняются по порядку, а разные карты — параллельно.
+ * Очереди ограничены: при переполнении перевод остаётся PENDING в БД, а все следующие
+ * переводы той же карты тоже идут через sweep, пока он не вычерпает её очередь в БД.
+ * Так же обрабатывается перевод, оставшийся PENDING из-за инфраструктурной ошибки: следующие
+ * переводы карты его не обгоняют и ждут, пока sweep не выполнит его повторно.
+ */
+@Component
+public class AsyncTransferDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncTransferDispatcher.class);
+
+    private final TransferProcessor transferProcessor;
+    private final TransferRepository transferRepository;
+    private final AppProperties.Transfers settings;
+    private final ThreadPoolExecutor[] partitions;
+    // id переводов в очередях или в работе на этом узле → id исходной карты: sweep не ставит их повторно
+    private final Map<Long, Long> queued = new ConcurrentHashMap<>();
+    // Карты, у которых перевод не поместился в очередь; их переводы идут через sweep по порядку создания
+    private final Set<Long> overflowedCards = ConcurrentHashMap.newKeySet();
+    // Карты, у которых перевод упал и остался PENDING: стоящие за ним в очереди переводы пропускаются
+    private final Set<Long> stalledCards = ConcurrentHashMap.newKeySet();
+    // Решение "в очередь или в sweep" и вычерпывание карты sweep'ом не должны перемежаться
+    private final Striped<Lock> cardLocks = Striped.lock(64);
+
+    public AsyncTransferDispatcher(TransferProcessor transferProcessor,
+                                   TransferRepository transferRepository,
+                                   AppProperties appProperties) {
+        this.transferProcessor = transferProcessor;
+        this.transferRepository = transferRepository;
+        this.settings = appProperties.getTransfers();
+
+        int workers = Math.max(1, settings.getAsyncWorkers());
+        this.partitions = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            partitions[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, settings.getAsyncQueueCapacity())),
+                    new ThreadFactoryBuilder().setNameFormat("transfer-worker-" + i).setDaemon(true).build(),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    // Вызывается после коммита PENDING-перевода
+    public void dispatch(Transfer transfer) {
+        Long cardId = transfer.getFromCard().getId();
+        Lock lock = cardLocks.get(cardId);
+        lock.lock();
+        try {
+            if (overflowedCards.contains(cardId)) {
+                // Более ранний перевод карты ждёт sweep: обгонять его нельзя
+                logger.debug("Card {} has overflowed transfers, transfer {} left for sweep", cardId, transfer.getId());
+            } else if (!enqueue(transfer)) {
+                overflowedCards.add(cardId);
+                logger.debug("Transfer queue is full, transfer {} left for sweep", transfer.getId());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Сначала вычерпывает карты с переполнением, затем подбирает переводы, потерянные при перезапуске
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void sweepPending() {
+        for (Long cardId : overflowedCards) {
+            drainCard(cardId);
+        }
+
+        LocalDateTime before = LocalDateTime.now().minus(settings.getAsyncSweepAge());
+        List<Transfer> pending = transferRepository.findPendingCreatedBefore(before,
+                PageRequest.of(0, settings.getAsyncSweepBatchSize()));
+        int dispatched = 0;
+        for (Transfer transfer : pending) {
+            if (!queued.containsKey(transfer.getId()) && !overflowedCards.contains(transfer.getFromCard().getId())) {
+                dispatch(transfer);
+                dispatched++;
+            }
+        }
+        if (dispatched > 0) {
+            logger.info("Re-dispatched {} pending transfers", dispatched);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor partition : partitions) {
+            partition.shutdown();
+        }
+        for (ThreadPoolExecutor partition : partitions) {
+            if (!partition.awaitTermination(10, TimeUnit.SECONDS)) {
+                partition.shutdownNow();
+            }
+        }
+    }
+
+    // Запрос выполняется под блокировкой карты, чтобы новый перевод не проскочил между выборкой
+    // и снятием признака переполнения; блокировка берётся только для карт с переполнением
+    private void drainCard(Long cardId) {
+        Lock lock = cardLocks.get(cardId);
+        lock.lock();
+        try {
+            if (stalledCards.contains(cardId)) {
+                // Переводы, стоявшие в очереди за упавшим, ещё не пропущены: иначе новые их обгонят
+                if (queued.containsValue(cardId)) {
+                    return;
+                }
+                stalledCards.remove(cardId);
+            }
+
+            int batchSize = settings.getAsyncSweepBatchSize();
+            List<Transfer> pending = transferRepository.findPendingByFromCardId(cardId, PageRequest.of(0, batchSize));
+            for (Transfer transfer : pending) {
+                if (!queued.containsKey(transfer.getId()) && !enqueue(transfer)) {
+                    return;
+                }
+            }
+            if (pending.size() < batchSize) {
+                overflowedCards.remove(cardId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean enqueue(Transfer transfer) {
+        Long transferId = transfer.getId();
+        Long cardId = transfer.getFromCard().getId();
+        if (queued.putIfAbsent(transferId, cardId) != null) {
+            return true;
+        }
+        ThreadPoolExecutor partition = partitions[Math.floorMod(Long.hashCode(cardId), partitions.length)];
+        try {
+            partition.execute(() -> process(transferId, cardId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.remove(transferId);
+            return false;
+        }
+    }
+
+    private void process(Long transferId, Long cardId) {
+        try {
+            if (stalledCards.contains(cardId)) {
+                logger.debug("Earlier transfer of card {} is pending retry, transfer {} left for sweep",
+                        cardId, transferId);
+                return;
+            }
+            transferProcessor.complete(transferId);
+        } catch (RuntimeException e) {
+            logger.error("Async transfer {} failed, left pending: {}", transferId, e.getMessage(), e);
+            // Порядок признаков важен: dispatch, не увидевший переполнения, ставит перевод в очередь,
+            // и тот будет пропущен по stalledCards
+            stalledCards.add(cardId);
+            overflowedCards.add(cardId);
+        } finally {
+            queued.remove(transferId);
+        }
+    }
+}
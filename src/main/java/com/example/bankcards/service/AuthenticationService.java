@@ -2,68 +2,65 @@ package com.example.bankcards.service;
 
 import com.example.bankcards.dto.AuthenticationRequestDTO;
 import com.example.bankcards.dto.AuthenticationResponseDTO;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.JwtService;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import com.example.bankcards.security.PasswordCheckExecutor;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class AuthenticationService {
 
-    private final AuthenticationManager authenticationManager;
-    private final UserDetailsService userDetailsService;
+    private final UserRepository userRepository;
+    private final PasswordCheckExecutor passwordCheckExecutor;
     private final JwtService jwtService;
-    private final UserService userService;
+    private final LastLoginRecorder lastLoginRecorder;
 
-    public AuthenticationService(AuthenticationManager authenticationManager,
-                                 UserDetailsService userDetailsService,
+    public AuthenticationService(UserRepository userRepository,
+                                 PasswordCheckExecutor passwordCheckExecutor,
                                  JwtService jwtService,
-                                 UserService userService) {
-        this.authenticationManager = authenticationManager;
-        this.userDetailsService = userDetailsService;
+                                 LastLoginRecorder lastLoginRecorder) {
+        this.userRepository = userRepository;
+        this.passwordCheckExecutor = passwordCheckExecutor;
         this.jwtService = jwtService;
-        this.userService = userService;
+        this.lastLoginRecorder = lastLoginRecorder;
     }
 
-    public AuthenticationResponseDTO authenticate(AuthenticationRequestDTO request) {
-
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
-        );
-
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-
-        final UserDetails userDetails = userDetailsService.loadUserByUsername(request.getEmail());
-
-        String role = userDetails.getAuthorities().stream()
-                .findFirst()
-                .map(GrantedAuthority::getAuthority)
-                .orElse("ROLE_USER");
-
-        final String jwtToken = jwtService.generateToken(request.getEmail(), role);
-
-        userService.updateLastLogin(request.getEmail());
-
-        AuthenticationResponseDTO response = new AuthenticationResponseDTO();
-        response.setToken(jwtToken);
-        response.setEmail(request.getEmail());
-        response.setRole(role.replace("ROLE_", "")); // Убираем префикс ROLE_
+    // Пользователь читается один раз, BCrypt выполняется в ограниченном пуле PasswordCheckExecutor
+    public CompletableFuture<AuthenticationResponseDTO> authenticate(AuthenticationRequestDTO request) {
+        if (request.getEmail() == null || request.getPassword() == null) {
+            throw new BadCredentialsException("Неверный email или пароль");
+        }
 
-        return response;
+        // Пароль, флаг enabled и роли читаются из БД, а не из UserCache: устаревшая копия
+        // выдала бы свежий токен после смены пароля или блокировки на другом узле
+        User user = userRepository.findByEmail(request.getEmail()).orElse(null);
+        String encodedPassword = user != null ? user.getPassword() : null;
+
+        return passwordCheckExecutor.matches(request.getPassword(), encodedPassword)
+                .thenApply(matches -> {
+                    if (!matches || !user.isEnabled()) {
+                        throw new BadCredentialsException("Неверный email или пароль");
+                    }
+
+                    final String jwtToken = jwtService.generateToken(user);
+                    // Время входа пишется в БД фоном, ответ на логин не ждёт записи
+                    lastLoginRecorder.record(user.getId());
+
+                    AuthenticationResponseDTO response = new AuthenticationResponseDTO();
+                    response.setToken(jwtToken);
+                    response.setEmail(user.getEmail());
+                    response.setRole(user.getRoles().contains(Role.ROLE_ADMIN) ? "ADMIN" : "USER");
+                    return response;
+                });
     }
 
     public boolean validateToken(String token) {
-        try {
-            String username = jwtService.extractUsername(token);
-            return jwtService.validateToken(token, username);
-        } catch (Exception e) {
-            return false;
-        }
+        return jwtService.parse(token).isPresent();
     }
 
     public String extractUsernameFromToken(String token) {
@@ -73,4 +70,4 @@ public class AuthenticationService {
     public String extractRoleFromToken(String token) {
         return jwtService.extractRole(token);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.util.CardNumberEncryptor;
+import com.example.bankcards.util.CardNumberFingerprinter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Заполняет cards.card_number_fingerprint у карт, созданных до появления слепого индекса
+ * или узлом старой версии. Идёт по id порциями от контрольной точки с ограничением строк в секунду,
+ * каждая порция пишется одним JDBC-батчем. Строки, которые заполнить нельзя, остаются позади точки.
+ */
+@Component
+public class CardFingerprintBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardFingerprintBackfill.class);
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String CHECKPOINT_KEY = "card_number_fingerprint";
+
+    private static final String SELECT_PENDING =
+            "SELECT id, card_number_encrypted FROM cards " +
+                    "WHERE card_number_fingerprint IS NULL AND id > ? ORDER BY id LIMIT ?";
+
+    // Условие IS NULL делает проход безопасным при одновременном запуске на нескольких узлах
+    private static final String UPDATE_FINGERPRINT =
+            "UPDATE cards SET card_number_fingerprint = ? WHERE id = ? AND card_number_fingerprint IS NULL";
+
+    private static final String SELECT_CHECKPOINT =
+            "SELECT last_card_id FROM card_fingerprint_checkpoints WHERE checkpoint_key = ?";
+
+    // GREATEST: узел с отставшим проходом не откатывает контрольную точку назад
+    private static final String SAVE_CHECKPOINT =
+            "INSERT INTO card_fingerprint_checkpoints (checkpoint_key, last_card_id, updated_at) " +
+                    "VALUES (?, ?, CURRENT_TIMESTAMP) ON DUPLICATE KEY UPDATE " +
+                    "last_card_id = GREATEST(last_card_id, VALUES(last_card_id)), updated_at = CURRENT_TIMESTAMP";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CardNumberEncryptor cardNumberEncryptor;
+    private final CardNumberFingerprinter cardNumberFingerprinter;
+    private final int rowsPerSecond;
+    // Первый проход по большой таблице идёт долго, общий поток @Scheduled он занимать не должен
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CardFingerprintBackfill(JdbcTemplate jdbcTemplate,
+                                   CardNumberEncryptor cardNumberEncryptor,
+                                   CardNumberFingerprinter cardNumberFingerprinter,
+                                   AppProperties appProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cardNumberEncryptor = cardNumberEncryptor;
+        this.cardNumberFingerprinter = cardNumberFingerprinter;
+        this.rowsPerSecond = Math.max(1, appProperties.getEncryption().getFingerprintBackfillRowsPerSecond());
+        this.executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("card-fingerprint-%d").setDaemon(true).build());
+    }
+
+    @Scheduled(fixedDelay = 600_000, initialDelay = 10_000)
+    public void schedule() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    backfill();
+                } catch (RuntimeException e) {
+                    logger.warn("Card fingerprint backfill stopped, will resume from checkpoint: {}", e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    // Проход от контрольной точки до конца таблицы; возвращает число заполненных карт
+    public int backfill() {
+        long lastId = loadCheckpoint();
+        long started = System.nanoTime();
+        long scanned = 0;
+        int filled = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_PENDING, lastId, CHUNK_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> args = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                long id = ((Number) row.get("id")).longValue();
+                lastId = id;
+                try {
+                    String cardNumber = cardNumberEncryptor.decrypt((String) row.get("card_number_encrypted"));
+                    args.add(new Object[]{cardNumberFingerprinter.fingerprint(cardNumber), id});
+                } catch (RuntimeException e) {
+                    // Курсор по id уже сдвинут: строка остаётся за контрольной точкой и больше не читается
+                    logger.warn("Card {} cannot be decrypted, fingerprint skipped: {}", id, e.getMessage());
+                }
+            }
+            filled += update(args);
+            jdbcTemplate.update(SAVE_CHECKPOINT, CHECKPOINT_KEY, lastId);
+
+            scanned += rows.size();
+            if (rows.size() < CHUNK_SIZE) {
+                break;
+            }
+            throttle(started, scanned);
+        }
+
+        if (filled > 0) {
+            logger.info("Backfilled card number fingerprints for {} cards", filled);
+        }
+        return filled;
+    }
+
+    private long loadCheckpoint() {
+        List<Long> checkpoint = jdbcTemplate.queryForList(SELECT_CHECKPOINT, Long.class, CHECKPOINT_KEY);
+        return checkpoint.isEmpty() ? 0 : checkpoint.get(0);
+    }
+
+    // Пауза до момента, когда средняя скорость прохода опустится до rowsPerSecond
+    private void throttle(long started, long scanned) {
+        long due = started + scanned * TimeUnit.SECONDS.toNanos(1) / rowsPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int update(List<Object[]> args) {
+        if (args.isEmpty()) {
+            return 0;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_FINGERPRINT, args);
+            return args.size();
+        } catch (DataIntegrityViolationException e) {
+            // Старые дубликаты (номер записан с пробелами и без) дают один отпечаток; такие карты
+            // остаются без него, остальные строки порции пишутся по одной
+            int filled = 0;
+            for (Object[] row : args) {
+                try {
+                    filled += jdbcTemplate.update(UPDATE_FINGERPRINT, row);
+                } catch (DataIntegrityViolationException duplicate) {
+                    logger.warn("Card {} has the same number as another card, fingerprint left empty", row[1]);
+                }
+            }
+            return filled;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Прерывание останавливает проход после текущей порции, контрольная точка уже сохранена
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,455 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.CardImportErrorDTO;
+import com.example.bankcards.dto.CardImportResultDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.exception.ServiceBusyException;
+import com.example.bankcards.util.CardNumberEncryptor;
+import com.example.bankcards.util.CardNumberFingerprinter;
+import com.example.bankcards.util.CardNumberMasker;
+import com.example.bankcards.util.ConstraintViolations;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Потоковый импорт карт из CSV или NDJSON. Файл читается порциями: строки порции разбираются,
+ * проверяются, маскируются и шифруются параллельно, дубликаты отсеиваются в памяти и одним
+ * запросом к cards, а новые карты вставляются одним JDBC-батчем в транзакции порции.
+ */
+@Component
+public class CardImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardImporter.class);
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER_PREFIX = "card_number";
+
+    private static final String INSERT_CARD =
+            "INSERT INTO cards (card_number_encrypted, card_number_fingerprint, card_number_masked, holder_name, " +
+                    "expiry_date, status, balance, user_id, created_at, updated_at) " +
+                    "VALUES (?, ?, ?, ?, ?, 'ACTIVE', 0, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        public static Format of(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Неподдерживаемый формат импорта: " + value);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final CardNumberMasker cardNumberMasker;
+    private final CardNumberFingerprinter cardNumberFingerprinter;
+    private final CardNumberEncryptor cardNumberEncryptor;
+    private final int chunkSize;
+    private final int threads;
+    private final Semaphore permits;
+
+    public CardImporter(JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        ObjectMapper objectMapper,
+                        CardNumberMasker cardNumberMasker,
+                        CardNumberFingerprinter cardNumberFingerprinter,
+                        CardNumberEncryptor cardNumberEncryptor,
+                        AppProperties appProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.cardNumberMasker = cardNumberMasker;
+        this.cardNumberFingerprinter = cardNumberFingerprinter;
+        this.cardNumberEncryptor = cardNumberEncryptor;
+
+        AppProperties.Cards settings = appProperties.getCards();
+        this.chunkSize = Math.max(1, settings.getImportChunkSize());
+        this.threads = settings.getImportThreads() > 0
+                ? settings.getImportThreads()
+                : Runtime.getRuntime().availableProcessors();
+        this.permits = new Semaphore(Math.max(1, settings.getImportMaxConcurrent()));
+    }
+
+    // CSV: card_number,holder_name,expiry_date,user_id (строка заголовка необязательна);
+    // NDJSON: {"cardNumber":"...","holderName":"...","expiryDate":"2030-12-31","userId":1}
+    public CardImportResultDTO importCards(Format format, InputStream input) {
+        if (!permits.tryAcquire()) {
+            throw new ServiceBusyException("Импорт карт уже выполняется, повторите позже", 60);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("card-import-%d").setDaemon(true).build());
+        Report report = new Report();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(input, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            List<RawLine> chunk = new ArrayList<>(chunkSize);
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && format == Format.CSV && line.startsWith(CSV_HEADER_PREFIX))) {
+                    continue;
+                }
+                chunk.add(new RawLine(lineNumber, line));
+                if (chunk.size() == chunkSize) {
+                    importChunk(format, chunk, pool, report);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(format, chunk, pool, report);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.shutdownNow();
+            permits.release();
+        }
+
+        logger.info("Card import finished: {} lines, {} imported, {} failed",
+                report.total, report.imported, report.failed);
+        return report.toDto();
+    }
+
+    private void importChunk(Format format, List<RawLine> chunk, ExecutorService pool, Report report) {
+        report.total += chunk.size();
+        List<ParsedCard> parsed = parseInParallel(format, chunk, pool, report);
+
+        // Повторы внутри порции отсеиваются в памяти; повторы из прошлых порций уже в cards
+        Map<ByteBuffer, Integer> firstLines = new HashMap<>();
+        List<ParsedCard> unique = new ArrayList<>(parsed.size());
+        for (ParsedCard card : parsed) {
+            Integer firstLine = firstLines.putIfAbsent(ByteBuffer.wrap(card.fingerprint), card.line);
+            if (firstLine != null) {
+                report.fail(card.line, "DUPLICATE_IN_FILE", "Номер карты повторяет строку " + firstLine);
+            } else {
+                unique.add(card);
+            }
+        }
+
+        Set<ByteBuffer> existingCards = existingFingerprints(unique);
+        Set<Long> existingUsers = existingUsers(unique);
+        List<ParsedCard> toInsert = new ArrayList<>(unique.size());
+        for (ParsedCard card : unique) {
+            if (existingCards.contains(ByteBuffer.wrap(card.fingerprint))) {
+                report.fail(card.line, "CARD_EXISTS", "Карта с таким номером уже существует");
+            } else if (!existingUsers.contains(card.userId)) {
+                report.fail(card.line, "USER_NOT_FOUND", "Пользователь не найден с id: " + card.userId);
+            } else {
+                toInsert.add(card);
+            }
+        }
+
+        insert(toInsert, report);
+    }
+
+    // Разбор, проверка и маскирование по срезам порции, затем один encryptAll на срез
+    private List<ParsedCard> parseInParallel(Format format, List<RawLine> chunk, ExecutorService pool, Report report) {
+        int sliceSize = (chunk.size() + threads - 1) / threads;
+        List<Future<Slice>> futures = new ArrayList<>();
+        for (int from = 0; from < chunk.size(); from += sliceSize) {
+            List<RawLine> lines = chunk.subList(from, Math.min(from + sliceSize, chunk.size()));
+            futures.add(pool.submit(() -> parseSlice(format, lines)));
+        }
+
+        List<ParsedCard> parsed = new ArrayList<>(chunk.size());
+        try {
+            for (Future<Slice> future : futures) {
+                Slice slice = future.get();
+                parsed.addAll(slice.cards);
+                slice.errors.forEach(error -> report.fail(error.getLine(), error.getErrorCode(), error.getMessage()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Импорт карт прерван", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка обработки строк импорта", e.getCause());
+        }
+        return parsed;
+    }
+
+    private Slice parseSlice(Format format, List<RawLine> lines) {
+        Slice slice = new Slice();
+        List<String> cardNumbers = new ArrayList<>(lines.size());
+        for (RawLine line : lines) {
+            try {
+                ParsedCard card = parse(format, line);
+                slice.cards.add(card);
+                cardNumbers.add(card.cardNumber);
+            } catch (InvalidLineException e) {
+                slice.errors.add(new CardImportErrorDTO(line.number, e.errorCode, e.getMessage()));
+            }
+        }
+
+        List<String> encrypted = cardNumberEncryptor.encryptAll(cardNumbers);
+        for (int i = 0; i < slice.cards.size(); i++) {
+            slice.cards.get(i).encrypted = encrypted.get(i);
+        }
+        return slice;
+    }
+
+    private ParsedCard parse(Format format, RawLine line) {
+        List<String> fields = format == Format.CSV ? splitCsv(line.text) : readNdjson(line.text);
+        if (fields.size() != 4) {
+            throw new InvalidLineException("PARSE_ERROR", "Ожидается 4 поля: номер карты, держатель, срок действия, id пользователя");
+        }
+
+        String cardNumber = fields.get(0);
+        String masked = cardNumber != null ? cardNumberMasker.maskIfValid(cardNumber) : null;
+        if (masked == null) {
+            throw new InvalidLineException("INVALID_CARD_NUMBER", "Неверный номер карты");
+        }
+
+        String holderName = fields.get(1) != null ? fields.get(1).trim() : "";
+        if (holderName.length() < 2 || holderName.length() > 100) {
+            throw new InvalidLineException("INVALID_HOLDER_NAME", "Имя держателя должно быть от 2 до 100 символов");
+        }
+
+        LocalDate expiryDate;
+        try {
+            expiryDate = LocalDate.parse(String.valueOf(fields.get(2)).trim());
+        } catch (DateTimeParseException e) {
+            throw new InvalidLineException("INVALID_EXPIRY_DATE", "Срок действия должен быть датой в формате ГГГГ-ММ-ДД");
+        }
+        if (expiryDate.isBefore(LocalDate.now())) {
+            throw new InvalidLineException("EXPIRED", "Срок действия карты истек");
+        }
+
+        Long userId;
+        try {
+            userId = Long.valueOf(String.valueOf(fields.get(3)).trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidLineException("INVALID_USER_ID", "Неверный id пользователя");
+        }
+
+        // API принимает только 16 цифр подряд, поэтому разделители из файла в шифротекст не попадают
+        String digits = digitsOf(cardNumber);
+        return new ParsedCard(line.number, digits, masked, cardNumberFingerprinter.fingerprint(digits),
+                holderName, expiryDate, userId);
+    }
+
+    private static String digitsOf(String cardNumber) {
+        StringBuilder digits = new StringBuilder(cardNumber.length());
+        for (int i = 0; i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    // RFC 4180 в пределах одной строки: поле в кавычках может содержать запятые и удвоенные кавычки
+    private List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new InvalidLineException("PARSE_ERROR", "Незакрытая кавычка в строке CSV");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private List<String> readNdjson(String line) {
+        Map<?, ?> object;
+        try {
+            object = objectMapper.readValue(line, Map.class);
+        } catch (IOException e) {
+            throw new InvalidLineException("PARSE_ERROR", "Строка не является JSON-объектом");
+        }
+        if (object == null) {
+            throw new InvalidLineException("PARSE_ERROR", "Строка не является JSON-объектом");
+        }
+        List<String> fields = new ArrayList<>(4);
+        for (String name : List.of("cardNumber", "holderName", "expiryDate", "userId")) {
+            Object value = object.get(name);
+            fields.add(value != null ? value.toString() : null);
+        }
+        return fields;
+    }
+
+    private Set<ByteBuffer> existingFingerprints(List<ParsedCard> cards) {
+        if (cards.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Object[] args = cards.stream().map(card -> card.fingerprint).toArray();
+        List<byte[]> found = jdbcTemplate.queryForList(
+                "SELECT card_number_fingerprint FROM cards WHERE card_number_fingerprint IN (" + placeholders(args.length) + ")",
+                byte[].class, args);
+        Set<ByteBuffer> result = new HashSet<>();
+        found.forEach(fingerprint -> result.add(ByteBuffer.wrap(fingerprint)));
+        return result;
+    }
+
+    private Set<Long> existingUsers(List<ParsedCard> cards) {
+        Object[] args = cards.stream().map(card -> card.userId).distinct().toArray();
+        if (args.length == 0) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE id IN (" + placeholders(args.length) + ")", Long.class, args));
+    }
+
+    private String placeholders(int count) {
+        StringBuilder sql = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
+
+    private void insert(List<ParsedCard> cards, Report report) {
+        if (cards.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = cards.stream().map(this::insertArgs).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_CARD, args));
+            report.imported += cards.size();
+        } catch (DataIntegrityViolationException e) {
+            // Карту успели создать через API или удалили владельца после проверки: порция идёт по одной строке
+            for (ParsedCard card : cards) {
+                try {
+                    jdbcTemplate.update(INSERT_CARD, insertArgs(card));
+                    report.imported++;
+                } catch (DataIntegrityViolationException rowError) {
+                    reportRejected(card, rowError, report);
+                }
+            }
+        }
+    }
+
+    // Причина отказа определяется по имени нарушенного ограничения
+    private void reportRejected(ParsedCard card, DataIntegrityViolationException e, Report report) {
+        if (ConstraintViolations.isViolationOf(e, Card.FINGERPRINT_UNIQUE_KEY)) {
+            report.fail(card.line, "CARD_EXISTS", "Карта с таким номером уже существует");
+        } else if (ConstraintViolations.isViolationOf(e, Card.USER_FOREIGN_KEY)) {
+            report.fail(card.line, "USER_NOT_FOUND", "Пользователь не найден с id: " + card.userId);
+        } else {
+            logger.warn("Card import line {} rejected by the database: {}", card.line, e.getMessage());
+            report.fail(card.line, "REJECTED", "Карта отклонена базой данных");
+        }
+    }
+
+    private Object[] insertArgs(ParsedCard card) {
+        return new Object[]{card.encrypted, card.fingerprint, card.masked, card.holderName,
+                Date.valueOf(card.expiryDate), card.userId};
+    }
+
+    private record RawLine(int number, String text) {
+    }
+
+    private static final class ParsedCard {
+        private final int line;
+        private final String cardNumber;
+        private final String masked;
+        private final byte[] fingerprint;
+        private final String holderName;
+        private final LocalDate expiryDate;
+        private final Long userId;
+        private String encrypted;
+
+        private ParsedCard(int line, String cardNumber, String masked, byte[] fingerprint,
+                           String holderName, LocalDate expiryDate, Long userId) {
+            this.line = line;
+            this.cardNumber = cardNumber;
+            this.masked = masked;
+            this.fingerprint = fingerprint;
+            this.holderName = holderName;
+            this.expiryDate = expiryDate;
+            this.userId = userId;
+        }
+    }
+
+    private static final class Slice {
+        private final List<ParsedCard> cards = new ArrayList<>();
+        private final List<CardImportErrorDTO> errors = new ArrayList<>();
+    }
+
+    private static final class InvalidLineException extends RuntimeException {
+        private final String errorCode;
+
+        private InvalidLineException(String errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+    }
+
+    // Заполняется только потоком запроса
+    private static final class Report {
+        private int total;
+        private int imported;
+        private int failed;
+        private final List<CardImportErrorDTO> errors = new ArrayList<>();
+
+        private void fail(int line, String errorCode, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new CardImportErrorDTO(line, errorCode, message));
+            }
+        }
+
+        private CardImportResultDTO toDto() {
+            errors.sort((a, b) -> Integer.compare(a.getLine(), b.getLine()));
+            return new CardImportResultDTO(total, imported, failed, errors);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.util.CardNumberEncryptor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фоновое перешифрование номеров карт активным ключом после ротации. Идёт по cards порциями
+ * в порядке id с ограничением строк в секунду и сохраняет контрольную точку после каждой порции,
+ * так что после перезапуска продолжает с места остановки.
+ */
+@Component
+public class CardReencryptionJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardReencryptionJob.class);
+
+    private static final String SELECT_CHUNK =
+            "SELECT id, card_number_encrypted FROM cards WHERE id > ? ORDER BY id LIMIT ?";
+
+    // Сравнение со старым шифротекстом: строку, изменённую параллельно, задание не перезаписывает
+    private static final String UPDATE_CARD =
+            "UPDATE cards SET card_number_encrypted = ? WHERE id = ? AND card_number_encrypted = ?";
+
+    private static final String SELECT_CHECKPOINT =
+            "SELECT last_card_id FROM card_reencryption_checkpoints WHERE key_id = ?";
+
+    // GREATEST: узел с отставшим проходом не откатывает контрольную точку назад
+    private static final String SAVE_CHECKPOINT =
+            "INSERT INTO card_reencryption_checkpoints (key_id, last_card_id, updated_at) " +
+                    "VALUES (?, ?, CURRENT_TIMESTAMP) ON DUPLICATE KEY UPDATE " +
+                    "last_card_id = GREATEST(last_card_id, VALUES(last_card_id)), updated_at = CURRENT_TIMESTAMP";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CardNumberEncryptor cardNumberEncryptor;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int rowsPerSecond;
+    // Проход с ограничением скорости может идти часами, общий поток @Scheduled он занимать не должен
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CardReencryptionJob(JdbcTemplate jdbcTemplate,
+                               CardNumberEncryptor cardNumberEncryptor,
+                               AppProperties appProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cardNumberEncryptor = cardNumberEncryptor;
+
+        AppProperties.Encryption settings = appProperties.getEncryption();
+        this.enabled = settings.isReencryptEnabled();
+        this.chunkSize = Math.max(1, settings.getReencryptChunkSize());
+        this.rowsPerSecond = Math.max(1, settings.getReencryptRowsPerSecond());
+        this.executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("card-reencrypt-%d").setDaemon(true).build());
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 30000)
+    public void schedule() {
+        if (!enabled || cardNumberEncryptor.getActiveKeyId() == null || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    run();
+                } catch (RuntimeException e) {
+                    logger.warn("Card re-encryption stopped, will resume from checkpoint: {}", e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    // Проход от контрольной точки до конца таблицы; возвращает число перешифрованных карт
+    public int run() {
+        String keyId = cardNumberEncryptor.getActiveKeyId();
+        if (keyId == null) {
+            return 0;
+        }
+
+        long lastId = loadCheckpoint(keyId);
+        long started = System.nanoTime();
+        long scanned = 0;
+        int reencrypted = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_CHUNK, lastId, chunkSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> args = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                long id = ((Number) row.get("id")).longValue();
+                String encrypted = (String) row.get("card_number_encrypted");
+                lastId = id;
+                try {
+                    if (!cardNumberEncryptor.isEncryptedWithActiveKey(encrypted)) {
+                        args.add(new Object[]{cardNumberEncryptor.reencrypt(encrypted), id, encrypted});
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Card {} cannot be re-encrypted, skipped: {}", id, e.getMessage());
+                }
+            }
+
+            // Каждый UPDATE батча держит блокировку одной строки и сразу коммитится
+            if (!args.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_CARD, args);
+                reencrypted += args.size();
+            }
+            jdbcTemplate.update(SAVE_CHECKPOINT, keyId, lastId);
+
+            scanned += rows.size();
+            if (rows.size() < chunkSize) {
+                break;
+            }
+            throttle(started, scanned);
+        }
+
+        if (reencrypted > 0) {
+            logger.info("Re-encrypted {} cards with key {}, checkpoint at card {}", reencrypted, keyId, lastId);
+        }
+        return reencrypted;
+    }
+
+    private long loadCheckpoint(String keyId) {
+        List<Long> checkpoint = jdbcTemplate.queryForList(SELECT_CHECKPOINT, Long.class, keyId);
+        return checkpoint.isEmpty() ? 0 : checkpoint.get(0);
+    }
+
+    // Пауза до момента, когда средняя скорость прохода опустится до rowsPerSecond
+    private void throttle(long started, long scanned) {
+        long due = started + scanned * TimeUnit.SECONDS.toNanos(1) / rowsPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Прерывание останавливает проход после текущей порции, контрольная точка уже сохранена
+        executor.shutdownNow();
+    }
+}
@@ -2,6 +2,7 @@ package com.example.bankcards.service;
 
 import com.example.bankcards.dto.CardCreateDTO;
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardImportResultDTO;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.CardStatus;
 import com.example.bankcards.entity.User;
@@ -9,14 +10,18 @@ import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.UnauthorizedCardAccessException;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.util.CardNumberEncryptor;
+import com.example.bankcards.util.CardNumberFingerprinter;
 import com.example.bankcards.util.CardNumberMasker;
+import com.example.bankcards.util.ConstraintViolations;
 import com.example.bankcards.util.SecurityUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
@@ -27,22 +32,30 @@ public class CardService {
 
     private final CardRepository cardRepository;
     private final CardNumberEncryptor cardNumberEncryptor;
+    private final CardNumberFingerprinter cardNumberFingerprinter;
     private final CardNumberMasker cardNumberMasker;
     private final SecurityUtils securityUtils;
+    private final CardImporter cardImporter;
 
     public CardService(CardRepository cardRepository,
                        CardNumberEncryptor cardNumberEncryptor,
+                       CardNumberFingerprinter cardNumberFingerprinter,
                        CardNumberMasker cardNumberMasker,
-                       SecurityUtils securityUtils) {
+                       SecurityUtils securityUtils,
+                       CardImporter cardImporter) {
         this.cardRepository = cardRepository;
         this.cardNumberEncryptor = cardNumberEncryptor;
+        this.cardNumberFingerprinter = cardNumberFingerprinter;
         this.cardNumberMasker = cardNumberMasker;
         this.securityUtils = securityUtils;
+        this.cardImporter = cardImporter;
     }
 
     @Transactional
     public CardDTO createCard(CardCreateDTO cardCreateDTO, Long userId) {
-        if (!cardNumberMasker.isValidCardNumber(cardCreateDTO.getCardNumber())) {
+        // Проверка Луна и маска за один проход по номеру
+        String maskedCardNumber = cardNumberMasker.maskIfValid(cardCreateDTO.getCardNumber());
+        if (maskedCardNumber == null) {
             throw new IllegalArgumentException("Неверный номер карты");
         }
 
@@ -50,13 +63,13 @@ public class CardService {
             throw new IllegalArgumentException("Срок действия карты истек");
         }
 
-        String encryptedCardNumber = cardNumberEncryptor.encrypt(cardCreateDTO.getCardNumber());
+        byte[] fingerprint = cardNumberFingerprinter.fingerprint(cardCreateDTO.getCardNumber());
 
-        if (cardRepository.existsByCardNumberEncrypted(encryptedCardNumber)) {
+        if (cardRepository.existsByCardNumberFingerprint(fingerprint)) {
             throw new IllegalArgumentException("Карта с таким номером уже существует");
         }
 
-        String maskedCardNumber = cardNumberMasker.mask(cardCreateDTO.getCardNumber());
+        String encryptedCardNumber = cardNumberEncryptor.encrypt(cardCreateDTO.getCardNumber());
 
         User currentUser = securityUtils.getCurrentUser();
 
@@ -66,6 +79,7 @@ public class CardService {
 
         Card card = new Card();
         card.setCardNumberEncrypted(encryptedCardNumber);
+        card.setCardNumberFingerprint(fingerprint);
         card.setCardNumberMasked(maskedCardNumber);
         card.setHolderName(cardCreateDTO.getHolderName());
         card.setExpiryDate(cardCreateDTO.getExpiryDate());
@@ -73,11 +87,26 @@ public class CardService {
         card.setBalance(BigDecimal.ZERO);
         card.setUser(user);
 
-        Card savedCard = cardRepository.save(card);
+        Card savedCard;
+        try {
+            savedCard = cardRepository.save(card);
+        } catch (DataIntegrityViolationException e) {
+            // Ту же карту параллельно создал другой запрос: сработал уникальный индекс отпечатка.
+            // Прочие нарушения (например, владелец удалён) не выдаются за дубликат
+            if (ConstraintViolations.isViolationOf(e, Card.FINGERPRINT_UNIQUE_KEY)) {
+                throw new IllegalArgumentException("Карта с таким номером уже существует");
+            }
+            throw e;
+        }
 
         return convertToDTO(savedCard);
     }
 
+    // Без общей транзакции: каждая порция импорта коммитится отдельно
+    public CardImportResultDTO importCards(String format, InputStream input) {
+        return cardImporter.importCards(CardImporter.Format.of(format), input);
+    }
+
     @Transactional(readOnly = true)
     public CardDTO getCardById(Long id) {
         Card card = cardRepository.findById(id)
@@ -90,10 +119,10 @@ public class CardService {
 
     @Transactional(readOnly = true)
     public Page<CardDTO> getUserCards(Pageable pageable, CardStatus status, String search) {
-        User currentUser = securityUtils.getCurrentUser();
+        Long currentUserId = securityUtils.getCurrentUserId();
 
         Page<Card> cards = cardRepository.findByUserIdWithFilters(
-                currentUser.getId(), status, search, pageable);
+                currentUserId, status, search, pageable);
 
         return cards.map(this::convertToDTO);
     }
@@ -129,7 +158,7 @@ public class CardService {
 
         // Только администратор или владелец может удалить карту
         boolean isAdmin = securityUtils.isAdmin();
-        boolean isOwner = card.getUser().getId().equals(securityUtils.getCurrentUserId());
+        boolean isOwner = card.getUserId().equals(securityUtils.getCurrentUserId());
 
         if (!isAdmin && !isOwner) {
             throw new AccessDeniedException("Доступ запрещен");
@@ -171,7 +200,7 @@ public class CardService {
 
     private void checkCardAccess(Card card) {
         boolean isAdmin = securityUtils.isAdmin();
-        boolean isOwner = card.getUser().getId().equals(securityUtils.getCurrentUserId());
+        boolean isOwner = card.getUserId().equals(securityUtils.getCurrentUserId());
 
         if (!isAdmin && !isOwner) {
             throw new UnauthorizedCardAccessException("Доступ к карте запрещен");
@@ -186,7 +215,7 @@ public class CardService {
         dto.setExpiryDate(card.getExpiryDate());
         dto.setStatus(card.getStatus());
         dto.setBalance(card.getBalance());
-        dto.setUserId(card.getUser().getId());
+        dto.setUserId(card.getUserId());
         return dto;
     }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferSummaryDTO;
+import com.example.bankcards.entity.CardTransferStats;
+import com.example.bankcards.repository.CardTransferStatsRepository;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Чтение, пересчёт и проверка card_transfer_stats. Текущие изменения таблицы
+ * выполняет TransferProcessor в транзакции перевода.
+ */
+@Service
+public class CardTransferStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardTransferStatsService.class);
+
+    private static final int MAX_REPORTED_MISMATCHES = 1000;
+
+    private static final String COMPLETED_TOTALS =
+            "LEFT JOIN (SELECT from_card_id AS card_id, SUM(amount) AS total, COUNT(*) AS cnt, " +
+            "MIN(created_at) AS first_at, MAX(created_at) AS last_at FROM transfers " +
+            "WHERE status = 'COMPLETED' AND from_card_id BETWEEN ? AND ? GROUP BY from_card_id) o " +
+            "ON o.card_id = c.id " +
+            "LEFT JOIN (SELECT to_card_id AS card_id, SUM(amount) AS total, COUNT(*) AS cnt, " +
+            "MIN(created_at) AS first_at, MAX(created_at) AS last_at FROM transfers " +
+            "WHERE status = 'COMPLETED' AND to_card_id BETWEEN ? AND ? GROUP BY to_card_id) i " +
+            "ON i.card_id = c.id ";
+
+    // LEAST и GREATEST возвращают NULL, если один из аргументов NULL, поэтому пропуски заполняются встречным значением
+    private static final String FIRST_AT = "LEAST(COALESCE(o.first_at, i.first_at), COALESCE(i.first_at, o.first_at))";
+    private static final String LAST_AT = "GREATEST(COALESCE(o.last_at, i.last_at), COALESCE(i.last_at, o.last_at))";
+
+    private static final String REBUILD_RANGE =
+            "INSERT INTO card_transfer_stats (card_id, total_sent, sent_count, total_received, received_count, " +
+            "first_transfer_at, last_transfer_at) " +
+            "SELECT c.id, COALESCE(o.total, 0), COALESCE(o.cnt, 0), COALESCE(i.total, 0), COALESCE(i.cnt, 0), " +
+            FIRST_AT + ", " + LAST_AT + " " +
+            "FROM cards c " + COMPLETED_TOTALS +
+            "WHERE c.id BETWEEN ? AND ? AND (o.card_id IS NOT NULL OR i.card_id IS NOT NULL)";
+
+    private static final String FIND_MISMATCHES =
+            "SELECT c.id FROM cards c " +
+            "LEFT JOIN card_transfer_stats s ON s.card_id = c.id " + COMPLETED_TOTALS +
+            "WHERE c.id BETWEEN ? AND ? AND (" +
+            "COALESCE(s.total_sent, 0) <> COALESCE(o.total, 0) OR COALESCE(s.sent_count, 0) <> COALESCE(o.cnt, 0) OR " +
+            "COALESCE(s.total_received, 0) <> COALESCE(i.total, 0) OR " +
+            "COALESCE(s.received_count, 0) <> COALESCE(i.cnt, 0) OR " +
+            "NOT (s.first_transfer_at <=> " + FIRST_AT + ") OR NOT (s.last_transfer_at <=> " + LAST_AT + ")) " +
+            "ORDER BY c.id";
+
+    private final CardTransferStatsRepository cardTransferStatsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AppProperties.Transfers settings;
+
+    public CardTransferStatsService(CardTransferStatsRepository cardTransferStatsRepository,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    AppProperties appProperties) {
+        this.cardTransferStatsRepository = cardTransferStatsRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settings = appProperties.getTransfers();
+    }
+
+    @Transactional(readOnly = true)
+    public TransferSummaryDTO getSummary(Long cardId) {
+        return cardTransferStatsRepository.findById(cardId)
+                .map(this::toSummary)
+                .orElseGet(() -> new TransferSummaryDTO(BigDecimal.ZERO, BigDecimal.ZERO, 0, 0, null, null));
+    }
+
+    // Пересчитывает таблицу из transfers диапазонами id карт, каждый диапазон в своей транзакции
+    public int rebuild() {
+        List<Integer> rebuilt = forEachCardRange(this::rebuildRange);
+        int cards = rebuilt.stream().mapToInt(Integer::intValue).sum();
+        logger.info("Rebuilt transfer stats for {} cards", cards);
+        return cards;
+    }
+
+    // Карты, у которых статистика расходится с полным пересчётом по transfers
+    public List<Long> findInconsistentCards() {
+        List<Long> mismatches = new ArrayList<>();
+        for (List<Long> rangeMismatches : forEachCardRange(this::findMismatches)) {
+            mismatches.addAll(rangeMismatches);
+        }
+        if (!mismatches.isEmpty()) {
+            logger.warn("Transfer stats differ from transfers for {} cards", mismatches.size());
+        }
+        return mismatches.size() > MAX_REPORTED_MISMATCHES
+                ? mismatches.subList(0, MAX_REPORTED_MISMATCHES)
+                : mismatches;
+    }
+
+    private int rebuildRange(long fromId, long toId) {
+        Integer inserted = transactionTemplate.execute(status -> {
+            // Блокировки карт диапазона не дают переводам изменить статистику во время пересчёта
+            jdbcTemplate.queryForList("SELECT id FROM cards WHERE id BETWEEN ? AND ? ORDER BY id FOR UPDATE",
+                    Long.class, fromId, toId);
+            jdbcTemplate.update("DELETE FROM card_transfer_stats WHERE card_id BETWEEN ? AND ?", fromId, toId);
+            return jdbcTemplate.update(REBUILD_RANGE, fromId, toId, fromId, toId, fromId, toId);
+        });
+        return inserted != null ? inserted : 0;
+    }
+
+    private List<Long> findMismatches(long fromId, long toId) {
+        return jdbcTemplate.queryForList(FIND_MISMATCHES, Long.class, fromId, toId, fromId, toId, fromId, toId);
+    }
+
+    private <T> List<T> forEachCardRange(CardRangeTask<T> task) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cards", Long.class);
+        int chunkSize = Math.max(1, settings.getStatsRebuildChunkSize());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, settings.getStatsRebuildThreads()),
+                new ThreadFactoryBuilder().setNameFormat("transfer-stats-%d").build());
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (long fromId = 1; fromId <= maxId; fromId += chunkSize) {
+                long rangeStart = fromId;
+                long rangeEnd = fromId + chunkSize - 1;
+                futures.add(pool.submit(() -> task.run(rangeStart, rangeEnd)));
+            }
+
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обработка статистики переводов прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка обработки статистики переводов", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private TransferSummaryDTO toSummary(CardTransferStats stats) {
+        return new TransferSummaryDTO(stats.getTotalSent(), stats.getTotalReceived(),
+                stats.getSentCount(), stats.getReceivedCount(),
+                stats.getFirstTransferAt(), stats.getLastTransferAt());
+    }
+
+    @FunctionalInterface
+    private interface CardRangeTask<T> {
+        T run(long fromId, long toId);
+    }
+}
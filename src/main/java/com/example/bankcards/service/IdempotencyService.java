@@ -0,0 +1,149 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.IdempotencyKeyReusedException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Хранилище ключей идемпотентности: LRU-кэш с TTL в памяти узла
+ * перед таблицей idempotency_keys. Ключ привязан к хэшу тела запроса,
+ * в кэше лежит исходный ответ, поэтому повтор не обращается к БД.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransferRepository transferRepository;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Cache<String, Replay> recentKeys;
+
+    @Autowired
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              TransferRepository transferRepository,
+                              AppProperties appProperties) {
+        this(idempotencyKeyRepository, transferRepository, appProperties, Ticker.systemTicker(), Clock.systemDefaultZone());
+    }
+
+    // Ticker и Clock подменяются в тестах истечения TTL
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              TransferRepository transferRepository,
+                              AppProperties appProperties,
+                              Ticker ticker,
+                              Clock clock) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transferRepository = transferRepository;
+        this.ttl = appProperties.getTransfers().getIdempotencyKeyTtl();
+        this.clock = clock;
+        this.recentKeys = CacheBuilder.newBuilder()
+                .maximumSize(appProperties.getTransfers().getIdempotencyCacheSize())
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .build();
+    }
+
+    public void validateKey(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key должен содержать от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+    }
+
+    // Сумма нормализуется, поэтому 10 и 10.00 считаются одним запросом; режим входит в хэш,
+    // так как синхронный и асинхронный ответы различаются
+    public byte[] requestHash(TransferRequestDTO request, boolean async) {
+        BigDecimal amount = request.getAmount();
+        String canonical = request.getFromCardId() + "\n" + request.getToCardId() + "\n"
+                + (amount != null ? amount.stripTrailingZeros().toPlainString() : "") + "\n"
+                + Objects.toString(request.getDescription(), "") + "\n"
+                + (async ? "async" : "sync");
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Исходный ответ на запрос с этим ключом; тот же ключ с другим телом отклоняется
+    @Transactional(readOnly = true)
+    public Optional<TransferDTO> findResponse(Long userId, String key, byte[] requestHash) {
+        String cacheKey = cacheKey(userId, key);
+        Replay cached = recentKeys.getIfPresent(cacheKey);
+        if (cached != null) {
+            checkSameRequest(cached.requestHash(), requestHash);
+            return Optional.of(cached.response());
+        }
+
+        Optional<IdempotencyKey> stored = idempotencyKeyRepository.findByUserIdAndIdempotencyKey(userId, key);
+        if (stored.isEmpty()) {
+            return Optional.empty();
+        }
+        checkSameRequest(stored.get().getRequestHash(), requestHash);
+
+        Optional<TransferDTO> response = transferRepository.findDtoById(stored.get().getTransferId());
+        response.ifPresent(dto -> recentKeys.put(cacheKey,
+                new Replay(stored.get().getRequestHash() != null ? stored.get().getRequestHash() : requestHash, dto)));
+        return response;
+    }
+
+    // Вызывается в транзакции перевода: дубликат ключа откатит и сам перевод
+    public void record(Long userId, String key, byte[] requestHash, Long transferId) {
+        idempotencyKeyRepository.save(new IdempotencyKey(userId, key, transferId, requestHash));
+    }
+
+    // Вызывается после коммита перевода, чтобы в кэш не попал откаченный ответ
+    public void remember(Long userId, String key, byte[] requestHash, TransferDTO response) {
+        recentKeys.put(cacheKey(userId, key), new Replay(requestHash, response));
+    }
+
+    @Scheduled(fixedDelay = 3600000, initialDelay = 60000)
+    @Transactional
+    public void purgeExpiredKeys() {
+        int deleted = idempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now(clock).minus(ttl));
+        if (deleted > 0) {
+            logger.info("Removed {} expired idempotency keys", deleted);
+        }
+    }
+
+    private void checkSameRequest(byte[] storedHash, byte[] requestHash) {
+        // Ключи без хэша записаны до его появления, их тело сверить не с чем
+        if (storedHash != null && !Arrays.equals(storedHash, requestHash)) {
+            throw new IdempotencyKeyReusedException(
+                    "Idempotency-Key уже использован для другого запроса");
+        }
+    }
+
+    private String cacheKey(Long userId, String key) {
+        return userId + ":" + key;
+    }
+
+    private record Replay(byte[] requestHash, TransferDTO response) {
+    }
+}
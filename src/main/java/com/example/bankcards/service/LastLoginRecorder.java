@@ -0,0 +1,75 @@
+package com.example.bankcards.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отложенная запись users.last_login. Логин только кладёт время в память, повторные входы
+ * одного пользователя схлопываются до последнего, а фоновая задача пишет их одним JDBC-батчем.
+ */
+@Component
+public class LastLoginRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastLoginRecorder.class);
+
+    // Условие по last_login не даёт отставшему узлу затереть более поздний вход
+    private static final String UPDATE_LAST_LOGIN =
+            "UPDATE users SET last_login = ? WHERE id = ? AND (last_login IS NULL OR last_login < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    public LastLoginRecorder(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void record(Long userId) {
+        pending.merge(userId, LocalDateTime.now(), (previous, current) -> current.isAfter(previous) ? current : previous);
+    }
+
+    @Scheduled(fixedDelay = 5000, initialDelay = 5000)
+    public void flush() {
+        // Запись забирается, только если её не обновили параллельно; иначе уйдёт в следующий раз
+        Map<Long, LocalDateTime> batch = new TreeMap<>();
+        for (Map.Entry<Long, LocalDateTime> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // id по возрастанию: батчи с разных узлов блокируют строки в одном порядке
+        List<Object[]> args = new ArrayList<>(batch.size());
+        batch.forEach((userId, lastLogin) -> {
+            Timestamp at = Timestamp.valueOf(lastLogin);
+            args.add(new Object[]{at, userId, at});
+        });
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_LOGIN, args);
+        } catch (RuntimeException e) {
+            batch.forEach((userId, lastLogin) -> pending.merge(userId, lastLogin,
+                    (current, failed) -> current.isAfter(failed) ? current : failed));
+            logger.warn("Failed to flush {} last-login timestamps, will retry: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.exception.ServiceBusyException;
+import com.example.bankcards.repository.TransferRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка истории переводов. Строки читаются курсором MySQL и сразу
+ * отсоединяются от контекста персистентности, поэтому память не зависит от объёма истории.
+ * Каждая выгрузка держит соединение из пула до конца, их число ограничено семафором.
+ */
+@Component
+public class TransferExporter {
+
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        CSV("text/csv"),
+        NDJSON("application/x-ndjson");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return name().toLowerCase();
+        }
+
+        public static Format of(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Неподдерживаемый формат выгрузки: " + value);
+        }
+    }
+
+    private final TransferRepository transferRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Semaphore permits;
+    private final Duration timeout;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public TransferExporter(TransferRepository transferRepository,
+                            PlatformTransactionManager transactionManager,
+                            ObjectMapper objectMapper,
+                            AppProperties appProperties) {
+        this.transferRepository = transferRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.permits = new Semaphore(Math.max(1, appProperties.getTransfers().getExportMaxConcurrent()));
+        this.timeout = appProperties.getTransfers().getExportTimeout();
+    }
+
+    // Права проверяются до вызова; выгрузка выполняется позже, в потоке асинхронной обработки запроса.
+    // Слот занимается сразу, чтобы перегрузка вернула 503 до начала ответа.
+    public ExportBody export(Format format, Long userId, Long cardId,
+                             LocalDateTime from, LocalDateTime to) {
+        if (!permits.tryAcquire()) {
+            throw new ServiceBusyException("Слишком много одновременных выгрузок, повторите позже", 30);
+        }
+
+        LocalDateTime rangeFrom = from != null ? from : EARLIEST;
+        LocalDateTime rangeTo = to != null ? to : LATEST;
+        return new ExportBody(out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Transfer> transfers = cardId != null
+                        ? transferRepository.streamCardTransfers(cardId, rangeFrom, rangeTo)
+                        : transferRepository.streamUserTransfers(userId, rangeFrom, rangeTo)) {
+                    transfers.forEach(transfer -> {
+                        rows.write(transfer);
+                        entityManager.detach(transfer);
+                    });
+                }
+            });
+            rows.finish();
+        });
+    }
+
+    /**
+     * Тело выгрузки, владеющее слотом. Слот освобождается один раз: после записи тела
+     * или по завершении асинхронной обработки запроса, если тело так и не было записано
+     * (обрыв соединения, таймаут, отказ исполнителя). Контроллер регистрирует тело
+     * перехватчиком в WebAsyncManager; перехватчик же продлевает таймаут асинхронного
+     * запроса, не трогая общий spring.mvc.async.request-timeout.
+     */
+    public class ExportBody implements StreamingResponseBody, CallableProcessingInterceptor {
+
+        private final StreamingResponseBody rows;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ExportBody(StreamingResponseBody rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            // Запрос уже завершён без нас: слот отдан другой выгрузке, писать некуда
+            if (released.get()) {
+                return;
+            }
+            try {
+                rows.writeTo(out);
+            } finally {
+                release();
+            }
+        }
+
+        // Вызывается до startAsync, пока таймаут запроса ещё можно изменить
+        @Override
+        public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+            if (request instanceof AsyncWebRequest asyncRequest) {
+                asyncRequest.setTimeout(timeout.toMillis());
+            }
+        }
+
+        @Override
+        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+            release();
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private interface RowWriter {
+        void write(Transfer transfer);
+
+        void finish() throws IOException;
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("id,created_at,from_card_id,to_card_id,amount,status,description\n");
+        }
+
+        @Override
+        public void write(Transfer transfer) {
+            try {
+                writer.write(String.valueOf(transfer.getId()));
+                writer.write(',');
+                writer.write(String.valueOf(transfer.getCreatedAt()));
+                writer.write(',');
+                writer.write(String.valueOf(transfer.getFromCard().getId()));
+                writer.write(',');
+                writer.write(String.valueOf(transfer.getToCard().getId()));
+                writer.write(',');
+                writer.write(transfer.getAmount().toPlainString());
+                writer.write(',');
+                writer.write(transfer.getStatus());
+                writer.write(',');
+                writeEscaped(transfer.getDescription());
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // RFC 4180: поле с разделителем, кавычкой или переводом строки берётся в кавычки
+        private void writeEscaped(String value) throws IOException {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            this.generator = objectMapper.getFactory().createGenerator(writer)
+                    .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+                    .setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(Transfer transfer) {
+            try {
+                generator.writeStartObject();
+                generator.writeNumberField("id", transfer.getId());
+                generator.writeStringField("createdAt", String.valueOf(transfer.getCreatedAt()));
+                generator.writeNumberField("fromCardId", transfer.getFromCard().getId());
+                generator.writeNumberField("toCardId", transfer.getToCard().getId());
+                generator.writeNumberField("amount", transfer.getAmount());
+                generator.writeStringField("status", transfer.getStatus());
+                generator.writeStringField("description", transfer.getDescription());
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferBatchResultDTO;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.exception.UnauthorizedCardAccessException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardTransferStatsRepository;
+import com.example.bankcards.repository.TransferRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Выполняет перевод в отдельной транзакции. Строки обеих карт всегда
+ * блокируются по возрастанию id, поэтому встречные переводы не образуют
+ * взаимоблокировку; при таймауте блокировки или deadlock транзакция
+ * повторяется с ограниченной экспоненциальной задержкой.
+ */
+@Component
+public class TransferProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferProcessor.class);
+
+    private static final BigDecimal MIN_AMOUNT = BigDecimal.ONE;
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("1000000");
+
+    private final CardRepository cardRepository;
+    private final TransferRepository transferRepository;
+    private final CardTransferStatsRepository cardTransferStatsRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AppProperties.Transfers settings;
+
+    public TransferProcessor(CardRepository cardRepository,
+                             TransferRepository transferRepository,
+                             CardTransferStatsRepository cardTransferStatsRepository,
+                             PlatformTransactionManager transactionManager,
+                             AppProperties appProperties) {
+        this.cardRepository = cardRepository;
+        this.transferRepository = transferRepository;
+        this.cardTransferStatsRepository = cardTransferStatsRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settings = appProperties.getTransfers();
+    }
+
+    public Transfer execute(Long userId, TransferRequestDTO requestDTO) {
+        return execute(userId, requestDTO, transfer -> { });
+    }
+
+    // afterSave выполняется в той же транзакции, что и перевод
+    public Transfer execute(Long userId, TransferRequestDTO requestDTO, Consumer<Transfer> afterSave) {
+        validateRequest(requestDTO);
+
+        return inTransactionWithRetry(() -> {
+            Transfer transfer = settings.getStrategy() == AppProperties.Transfers.Strategy.LOCKING
+                    ? transferWithLocks(userId, requestDTO)
+                    : transferAtomically(userId, requestDTO);
+            recordStats(List.of(transfer));
+            afterSave.accept(transfer);
+            return transfer;
+        });
+    }
+
+    // Асинхронный режим: проверяем карты без блокировок и сохраняем PENDING, деньги двигает complete()
+    public Transfer submit(Long userId, TransferRequestDTO requestDTO, Consumer<Transfer> afterSave) {
+        validateRequest(requestDTO);
+
+        return transactionTemplate.execute(status -> {
+            Card fromCard = ownedCard(requestDTO.getFromCardId(), userId, true);
+            Card toCard = ownedCard(requestDTO.getToCardId(), userId, false);
+            if (!fromCard.isActive()) {
+                throw new IllegalArgumentException("Исходная карта не активна");
+            }
+            if (!toCard.isActive()) {
+                throw new IllegalArgumentException("Целевая карта не активна");
+            }
+
+            Transfer transfer = newTransfer(userId, fromCard, toCard, requestDTO, "PENDING");
+            transferRepository.save(transfer);
+            afterSave.accept(transfer);
+            return transfer;
+        });
+    }
+
+    // Переводит PENDING в COMPLETED или FAILED. Повторный вызов для того же перевода ничего не делает.
+    // При инфраструктурной ошибке перевод остаётся PENDING и будет подобран повторно.
+    public void complete(Long transferId) {
+        try {
+            inTransactionWithRetry(() -> {
+                Transfer transfer = pendingTransfer(transferId);
+                if (transfer == null) {
+                    return null;
+                }
+
+                Long fromCardId = transfer.getFromCard().getId();
+                Long toCardId = transfer.getToCard().getId();
+                Long userId = cardRepository.findUserIdById(fromCardId)
+                        .orElseThrow(() -> new CardNotFoundException("Исходная карта не найдена"));
+
+                if (settings.getStrategy() == AppProperties.Transfers.Strategy.LOCKING) {
+                    Card[] cards = lockBoth(userId, fromCardId, toCardId);
+                    checkTransferable(cards[0], cards[1], transfer.getAmount());
+                    moveBalance(cards[0], cards[1], transfer.getAmount());
+                } else {
+                    moveAtomically(userId, fromCardId, toCardId, transfer.getAmount());
+                }
+
+                transfer.setStatus("COMPLETED");
+                recordStats(List.of(transfer));
+                return transfer;
+            });
+        } catch (CardNotFoundException | UnauthorizedCardAccessException
+                 | InsufficientBalanceException | IllegalArgumentException e) {
+            // Изменения балансов откачены вместе с транзакцией, фиксируем отказ отдельно
+            transactionTemplate.executeWithoutResult(status -> {
+                Transfer transfer = pendingTransfer(transferId);
+                if (transfer != null) {
+                    transfer.setStatus("FAILED");
+                    transfer.setFailureReason(e.getMessage());
+                }
+            });
+        }
+    }
+
+    // Каждый чанк выполняется в своей транзакции; ошибка перевода не откатывает остальные
+    public List<TransferBatchResultDTO> executeBatch(Long userId, List<TransferRequestDTO> requests) {
+        List<TransferBatchResultDTO> results = new ArrayList<>(requests.size());
+        int chunkSize = Math.max(1, settings.getBatchChunkSize());
+
+        for (int offset = 0; offset < requests.size(); offset += chunkSize) {
+            List<TransferRequestDTO> chunk = requests.subList(offset, Math.min(offset + chunkSize, requests.size()));
+            int chunkOffset = offset;
+            try {
+                results.addAll(inTransactionWithRetry(() -> transferChunk(userId, chunk, chunkOffset)));
+            } catch (TransactionSystemException e) {
+                // Сбой фиксации или отката: неизвестно, применён ли чанк, повтор мог бы провести переводы дважды
+                logger.error("Batch chunk at {} failed on commit: {}", chunkOffset, e.getMessage(), e);
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(internalError(chunkOffset + i));
+                }
+            } catch (RuntimeException e) {
+                // Чанк откачен целиком: выполняем его переводы по одному, чтобы сбой одного не отменял остальные
+                logger.warn("Batch chunk at {} failed, retrying transfers one by one: {}", chunkOffset, e.getMessage());
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(transferSingle(userId, chunk.get(i), chunkOffset + i));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private TransferBatchResultDTO transferSingle(Long userId, TransferRequestDTO request, int index) {
+        try {
+            return inTransactionWithRetry(() -> transferChunk(userId, List.of(request), index)).get(0);
+        } catch (RuntimeException e) {
+            logger.error("Batch transfer at {} failed: {}", index, e.getMessage(), e);
+            return internalError(index);
+        }
+    }
+
+    private TransferBatchResultDTO internalError(int index) {
+        return TransferBatchResultDTO.failed(index, "INTERNAL_ERROR", "Не удалось выполнить перевод, повторите запрос");
+    }
+
+    public void validateRequest(TransferRequestDTO requestDTO) {
+        if (requestDTO.getFromCardId().equals(requestDTO.getToCardId())) {
+            throw new IllegalArgumentException("Нельзя перевести средства на ту же карту");
+        }
+
+        BigDecimal amount = requestDTO.getAmount();
+        if (amount.compareTo(MIN_AMOUNT) < 0) {
+            throw new IllegalArgumentException("Минимальная сумма перевода: 1");
+        }
+
+        if (amount.compareTo(MAX_AMOUNT) > 0) {
+            throw new IllegalArgumentException("Максимальная сумма перевода: 1,000,000");
+        }
+    }
+
+    private <T> T inTransactionWithRetry(Supplier<T> work) {
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= settings.getLockRetryAttempts()) {
+                    logger.warn("Transfer transaction failed after {} attempts: {}", attempt, e.getMessage());
+                    throw e;
+                }
+                logger.debug("Lock conflict on transfer transaction, attempt {}: {}", attempt, e.getMessage());
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    private Transfer transferWithLocks(Long userId, TransferRequestDTO requestDTO) {
+        Card[] cards = lockBoth(userId, requestDTO.getFromCardId(), requestDTO.getToCardId());
+
+        checkTransferable(cards[0], cards[1], requestDTO.getAmount());
+        moveBalance(cards[0], cards[1], requestDTO.getAmount());
+
+        return saveCompleted(userId, cards[0], cards[1], requestDTO);
+    }
+
+    // Списание и зачисление условными UPDATE без чтения карт: 3 запроса вместо 5
+    private Transfer transferAtomically(Long userId, TransferRequestDTO requestDTO) {
+        Long fromCardId = requestDTO.getFromCardId();
+        Long toCardId = requestDTO.getToCardId();
+
+        moveAtomically(userId, fromCardId, toCardId, requestDTO.getAmount());
+
+        return saveCompleted(userId, cardRepository.getReferenceById(fromCardId),
+                cardRepository.getReferenceById(toCardId), requestDTO);
+    }
+
+    // Блокируем карты в порядке возрастания id; возвращает {fromCard, toCard}
+    private Card[] lockBoth(Long userId, Long fromCardId, Long toCardId) {
+        Card fromCard;
+        Card toCard;
+        if (fromCardId < toCardId) {
+            fromCard = lockCard(fromCardId, userId, true);
+            toCard = lockCard(toCardId, userId, false);
+        } else {
+            toCard = lockCard(toCardId, userId, false);
+            fromCard = lockCard(fromCardId, userId, true);
+        }
+        return new Card[]{fromCard, toCard};
+    }
+
+    private void moveAtomically(Long userId, Long fromCardId, Long toCardId, BigDecimal amount) {
+        if (fromCardId < toCardId) {
+            debit(fromCardId, userId, amount);
+            credit(toCardId, userId, amount);
+        } else {
+            credit(toCardId, userId, amount);
+            debit(fromCardId, userId, amount);
+        }
+    }
+
+    // Все карты чанка блокируются одним запросом (ORDER BY id), балансы проверяются в памяти.
+    // UPDATE карт и INSERT переводов уходят при flush JDBC-батчами.
+    private List<TransferBatchResultDTO> transferChunk(Long userId, List<TransferRequestDTO> chunk, int offset) {
+        Set<Long> cardIds = new TreeSet<>();
+        for (TransferRequestDTO request : chunk) {
+            cardIds.add(request.getFromCardId());
+            cardIds.add(request.getToCardId());
+        }
+
+        Map<Long, Card> cards = new HashMap<>();
+        for (Card card : cardRepository.findAllByIdInAndUserIdForUpdate(cardIds, userId)) {
+            cards.put(card.getId(), card);
+        }
+
+        List<TransferBatchResultDTO> results = new ArrayList<>(chunk.size());
+        List<Transfer> completed = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferRequestDTO request = chunk.get(i);
+            try {
+                validateRequest(request);
+                Card fromCard = lockedCard(cards, request.getFromCardId(), true);
+                Card toCard = lockedCard(cards, request.getToCardId(), false);
+
+                checkTransferable(fromCard, toCard, request.getAmount());
+                moveBalance(fromCard, toCard, request.getAmount());
+
+                Transfer transfer = saveCompleted(userId, fromCard, toCard, request);
+                completed.add(transfer);
+                results.add(TransferBatchResultDTO.completed(offset + i, transfer.getId()));
+            } catch (CardNotFoundException | UnauthorizedCardAccessException
+                     | InsufficientBalanceException | IllegalArgumentException e) {
+                results.add(TransferBatchResultDTO.failed(offset + i, errorCode(e), e.getMessage()));
+            }
+        }
+
+        recordStats(completed);
+        return results;
+    }
+
+    // Изменения статистики суммируются по карте и применяются по возрастанию id, как и блокировки карт
+    private void recordStats(List<Transfer> completed) {
+        Map<Long, StatsDelta> deltas = new TreeMap<>();
+        for (Transfer transfer : completed) {
+            deltas.computeIfAbsent(transfer.getFromCard().getId(), id -> new StatsDelta()).sent(transfer);
+            deltas.computeIfAbsent(transfer.getToCard().getId(), id -> new StatsDelta()).received(transfer);
+        }
+
+        deltas.forEach((cardId, delta) -> cardTransferStatsRepository.addActivity(cardId,
+                delta.sent, delta.sentCount, delta.received, delta.receivedCount, delta.firstAt, delta.lastAt));
+    }
+
+    private void checkTransferable(Card fromCard, Card toCard, BigDecimal amount) {
+        if (!fromCard.isActive()) {
+            throw new IllegalArgumentException("Исходная карта не активна");
+        }
+
+        if (!toCard.isActive()) {
+            throw new IllegalArgumentException("Целевая карта не активна");
+        }
+
+        if (fromCard.getBalance().compareTo(amount) < 0) {
+            throw new InsufficientBalanceException("Недостаточно средств на карте");
+        }
+    }
+
+    private void moveBalance(Card fromCard, Card toCard, BigDecimal amount) {
+        fromCard.setBalance(fromCard.getBalance().subtract(amount));
+        toCard.setBalance(toCard.getBalance().add(amount));
+    }
+
+    private void debit(Long cardId, Long userId, BigDecimal amount) {
+        if (cardRepository.debitIfSufficient(cardId, userId, amount) == 0) {
+            throw rejection(cardId, userId, true);
+        }
+    }
+
+    private void credit(Long cardId, Long userId, BigDecimal amount) {
+        if (cardRepository.creditIfActive(cardId, userId, amount) == 0) {
+            throw rejection(cardId, userId, false);
+        }
+    }
+
+    // Выясняем причину только на пути ошибки, транзакция всё равно будет откачена
+    private RuntimeException rejection(Long cardId, Long userId, boolean source) {
+        Card card = cardRepository.findById(cardId).orElse(null);
+        if (card == null) {
+            return new CardNotFoundException(source ? "Исходная карта не найдена" : "Целевая карта не найдена");
+        }
+        if (!card.getUserId().equals(userId)) {
+            return new UnauthorizedCardAccessException(source
+                    ? "Исходная карта принадлежит другому пользователю"
+                    : "Целевая карта принадлежит другому пользователю");
+        }
+        if (!card.isActive()) {
+            return new IllegalArgumentException(source ? "Исходная карта не активна" : "Целевая карта не активна");
+        }
+        return new InsufficientBalanceException("Недостаточно средств на карте");
+    }
+
+    private Transfer saveCompleted(Long userId, Card fromCard, Card toCard, TransferRequestDTO requestDTO) {
+        return transferRepository.save(newTransfer(userId, fromCard, toCard, requestDTO, "COMPLETED"));
+    }
+
+    // Переводы выполняются только между картами одного пользователя
+    private Transfer newTransfer(Long userId, Card fromCard, Card toCard, TransferRequestDTO requestDTO,
+                                 String status) {
+        Transfer transfer = new Transfer();
+        transfer.setFromCard(fromCard);
+        transfer.setToCard(toCard);
+        transfer.setFromUserId(userId);
+        transfer.setToUserId(userId);
+        transfer.setAmount(requestDTO.getAmount());
+        transfer.setDescription(requestDTO.getDescription());
+        transfer.setStatus(status);
+        transfer.setCreatedAt(LocalDateTime.now());
+        return transfer;
+    }
+
+    private Transfer pendingTransfer(Long transferId) {
+        return transferRepository.findByIdForUpdate(transferId)
+                .filter(transfer -> "PENDING".equals(transfer.getStatus()))
+                .orElse(null);
+    }
+
+    private Card ownedCard(Long cardId, Long userId, boolean source) {
+        return cardRepository.findByIdAndUserId(cardId, userId)
+                .orElseThrow(() -> missingCard(cardId, source));
+    }
+
+    private Card lockCard(Long cardId, Long userId, boolean source) {
+        return cardRepository.findByIdAndUserIdForUpdate(cardId, userId)
+                .orElseThrow(() -> missingCard(cardId, source));
+    }
+
+    private Card lockedCard(Map<Long, Card> cards, Long cardId, boolean source) {
+        Card card = cards.get(cardId);
+        if (card == null) {
+            throw missingCard(cardId, source);
+        }
+        return card;
+    }
+
+    private RuntimeException missingCard(Long cardId, boolean source) {
+        if (!cardRepository.existsById(cardId)) {
+            return new CardNotFoundException(source ? "Исходная карта не найдена" : "Целевая карта не найдена");
+        }
+        return new UnauthorizedCardAccessException(source
+                ? "Исходная карта принадлежит другому пользователю"
+                : "Целевая карта принадлежит другому пользователю");
+    }
+
+    private String errorCode(RuntimeException e) {
+        if (e instanceof CardNotFoundException) {
+            return "CARD_NOT_FOUND";
+        }
+        if (e instanceof UnauthorizedCardAccessException) {
+            return "ACCESS_DENIED";
+        }
+        if (e instanceof InsufficientBalanceException) {
+            return "INSUFFICIENT_FUNDS";
+        }
+        return "INVALID_REQUEST";
+    }
+
+    private void backoff(int attempt, RuntimeException cause) {
+        long ceiling = Math.min(settings.getLockRetryMaxBackoffMs(),
+                settings.getLockRetryBackoffMs() << Math.min(attempt - 1, 16));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+
+    private static class StatsDelta {
+        private BigDecimal sent = BigDecimal.ZERO;
+        private long sentCount;
+        private BigDecimal received = BigDecimal.ZERO;
+        private long receivedCount;
+        private LocalDateTime firstAt;
+        private LocalDateTime lastAt;
+
+        void sent(Transfer transfer) {
+            sent = sent.add(transfer.getAmount());
+            sentCount++;
+            touch(transfer.getCreatedAt());
+        }
+
+        void received(Transfer transfer) {
+            received = received.add(transfer.getAmount());
+            receivedCount++;
+            touch(transfer.getCreatedAt());
+        }
+
+        private void touch(LocalDateTime at) {
+            if (firstAt == null || at.isBefore(firstAt)) {
+                firstAt = at;
+            }
+            if (lastAt == null || at.isAfter(lastAt)) {
+                lastAt = at;
+            }
+        }
+    }
+}
@@ -1,188 +1,287 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.TransferBatchResultDTO;
+import com.example.bankcards.dto.TransferDTO;
 import com.example.bankcards.dto.TransferRequestDTO;
-import com.example.bankcards.entity.Card;
+import com.example.bankcards.dto.TransferSliceDTO;
+import com.example.bankcards.dto.TransferSummaryDTO;
+import com.example.bankcards.dto.TransferView;
 import com.example.bankcards.entity.Transfer;
 import com.example.bankcards.exception.CardNotFoundException;
-import com.example.bankcards.exception.InsufficientBalanceException;
 import com.example.bankcards.exception.UnauthorizedCardAccessException;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.TransferRepository;
 import com.example.bankcards.util.SecurityUtils;
+import com.example.bankcards.util.TransferCursor;
 import jakarta.persistence.EntityNotFoundException;
+import org.hibernate.Hibernate;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 @Service
 public class TransferService {
 
+    private static final int MAX_SLICE_SIZE = 100;
+
     private final TransferRepository transferRepository;
     private final CardRepository cardRepository;
     private final SecurityUtils securityUtils;
+    private final TransferProcessor transferProcessor;
+    private final IdempotencyService idempotencyService;
+    private final AsyncTransferDispatcher asyncTransferDispatcher;
+    private final CardTransferStatsService cardTransferStatsService;
+    private final TransferExporter transferExporter;
 
     public TransferService(TransferRepository transferRepository,
                            CardRepository cardRepository,
-                           SecurityUtils securityUtils) {
+                           SecurityUtils securityUtils,
+                           TransferProcessor transferProcessor,
+                           IdempotencyService idempotencyService,
+                           AsyncTransferDispatcher asyncTransferDispatcher,
+                           CardTransferStatsService cardTransferStatsService,
+                           TransferExporter transferExporter) {
         this.transferRepository = transferRepository;
         this.cardRepository = cardRepository;
         this.securityUtils = securityUtils;
+        this.transferProcessor = transferProcessor;
+        this.idempotencyService = idempotencyService;
+        this.asyncTransferDispatcher = asyncTransferDispatcher;
+        this.cardTransferStatsService = cardTransferStatsService;
+        this.transferExporter = transferExporter;
     }
 
-    @Transactional
-    public Transfer createTransfer(TransferRequestDTO requestDTO) {
-        Long currentUserId = securityUtils.getCurrentUserId();
-
-        Card fromCard = cardRepository.findById(requestDTO.getFromCardId())
-                .orElseThrow(() -> new CardNotFoundException("Исходная карта не найдена"));
+    public TransferDTO createTransfer(TransferRequestDTO requestDTO) {
+        return createTransfer(requestDTO, null);
+    }
 
-        Card toCard = cardRepository.findById(requestDTO.getToCardId())
-                .orElseThrow(() -> new CardNotFoundException("Целевая карта не найдена"));
+    // Повтор запроса с тем же Idempotency-Key возвращает исходный ответ, не трогая карты
+    public TransferDTO createTransfer(TransferRequestDTO requestDTO, String idempotencyKey) {
+        return withIdempotency(idempotencyKey, requestDTO, false,
+                (userId, afterSave) -> transferProcessor.execute(userId, requestDTO, afterSave));
+    }
 
-        if (!fromCard.getUser().getId().equals(currentUserId)) {
-            throw new UnauthorizedCardAccessException("Исходная карта принадлежит другому пользователю");
-        }
+    // Сохраняет перевод в статусе PENDING, списание выполняется в фоне
+    public TransferDTO createTransferAsync(TransferRequestDTO requestDTO, String idempotencyKey) {
+        return withIdempotency(idempotencyKey, requestDTO, true, (userId, afterSave) -> {
+            Transfer transfer = transferProcessor.submit(userId, requestDTO, afterSave);
+            asyncTransferDispatcher.dispatch(transfer);
+            return transfer;
+        });
+    }
 
-        if (!toCard.getUser().getId().equals(currentUserId)) {
-            throw new UnauthorizedCardAccessException("Целевая карта принадлежит другому пользователю");
-        }
+    public List<TransferBatchResultDTO> createTransfers(List<TransferRequestDTO> requests) {
+        Long currentUserId = securityUtils.getCurrentUserId();
+        return transferProcessor.executeBatch(currentUserId, requests);
+    }
 
-        if (fromCard.getId().equals(toCard.getId())) {
-            throw new IllegalArgumentException("Нельзя перевести средства на ту же карту");
+    private TransferDTO withIdempotency(String idempotencyKey, TransferRequestDTO requestDTO, boolean async,
+                                        BiFunction<Long, Consumer<Transfer>, Transfer> create) {
+        Long currentUserId = securityUtils.getCurrentUserId();
+        if (idempotencyKey == null) {
+            return toDto(create.apply(currentUserId, transfer -> { }));
         }
 
-        if (!fromCard.isActive()) {
-            throw new IllegalArgumentException("Исходная карта не активна");
+        idempotencyService.validateKey(idempotencyKey);
+        byte[] requestHash = idempotencyService.requestHash(requestDTO, async);
+        Optional<TransferDTO> replay = idempotencyService.findResponse(currentUserId, idempotencyKey, requestHash);
+        if (replay.isPresent()) {
+            return replay.get();
         }
 
-        if (!toCard.isActive()) {
-            throw new IllegalArgumentException("Целевая карта не активна");
+        Transfer transfer;
+        try {
+            transfer = create.apply(currentUserId, saved ->
+                    idempotencyService.record(currentUserId, idempotencyKey, requestHash, saved.getId()));
+        } catch (DataIntegrityViolationException e) {
+            // Параллельный запрос с тем же ключом успел закоммитить перевод первым
+            return idempotencyService.findResponse(currentUserId, idempotencyKey, requestHash).orElseThrow(() -> e);
         }
 
-        BigDecimal amount = requestDTO.getAmount();
-        if (fromCard.getBalance().compareTo(amount) < 0) {
-            throw new InsufficientBalanceException("Недостаточно средств на карте");
-        }
+        TransferDTO response = toDto(transfer);
+        idempotencyService.remember(currentUserId, idempotencyKey, requestHash, response);
+        return response;
+    }
 
-        if (amount.compareTo(BigDecimal.ONE) < 0) {
-            throw new IllegalArgumentException("Минимальная сумма перевода: 1");
+    // Ответ собирается из карт, загруженных при переводе. Стратегия ATOMIC карты не читает,
+    // у неё остаётся один запрос перевода с масками номеров.
+    private TransferDTO toDto(Transfer transfer) {
+        if (Hibernate.isInitialized(transfer.getFromCard()) && Hibernate.isInitialized(transfer.getToCard())) {
+            return TransferDTO.from(transfer);
         }
+        return findDto(transfer.getId());
+    }
 
-        BigDecimal maxAmount = new BigDecimal("1000000");
-        if (amount.compareTo(maxAmount) > 0) {
-            throw new IllegalArgumentException("Максимальная сумма перевода: 1,000,000");
-        }
+    private TransferDTO findDto(Long transferId) {
+        return transferRepository.findDtoById(transferId)
+                .orElseThrow(() -> new EntityNotFoundException("Перевод не найден"));
+    }
 
-        fromCard.setBalance(fromCard.getBalance().subtract(amount));
-        toCard.setBalance(toCard.getBalance().add(amount));
+    @Transactional(readOnly = true)
+    public TransferDTO getTransferById(Long id) {
+        Long currentUserId = securityUtils.getCurrentUserId();
 
-        cardRepository.save(fromCard);
-        cardRepository.save(toCard);
+        return transferRepository.findDtoByIdAndUserId(id, currentUserId)
+                .orElseThrow(() -> transferRepository.existsById(id)
+                        ? new UnauthorizedCardAccessException("Доступ к переводу запрещен")
+                        : new EntityNotFoundException("Перевод не найден"));
+    }
 
-        Transfer transfer = new Transfer();
-        transfer.setFromCard(fromCard);
-        transfer.setToCard(toCard);
-        transfer.setAmount(amount);
-        transfer.setDescription(requestDTO.getDescription());
-        transfer.setStatus("COMPLETED");
-        transfer.setCreatedAt(LocalDateTime.now());
+    @Transactional(readOnly = true)
+    public Page<TransferDTO> getTransfersByCard(Long cardId, Pageable pageable) {
+        checkCardAccess(cardId);
 
-        return transferRepository.save(transfer);
+        if (isNewestFirst(pageable)) {
+            return transferRepository.findCardHistory(cardId, historyLimit(pageable), unsorted(pageable))
+                    .map(TransferDTO::from);
+        }
+        return transferRepository.findDtoByCardId(cardId, pageable);
     }
 
     @Transactional(readOnly = true)
-    public Transfer getTransferById(Long id) {
-        Transfer transfer = transferRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException("Перевод не найден"));
-
-        checkTransferAccess(transfer);
+    public TransferSliceDTO<TransferDTO> getTransfersByCard(Long cardId, String after, int size) {
+        checkCardAccess(cardId);
 
-        return transfer;
+        TransferCursor cursor = TransferCursor.decode(after);
+        List<TransferView> transfers = transferRepository.findCardHistoryBefore(cardId,
+                cursor.getCreatedAt(), cursor.getId(), sliceSize(size) + 1);
+        return toSlice(transfers, sliceSize(size));
     }
 
     @Transactional(readOnly = true)
-    public Page<Transfer> getTransfersByCard(Long cardId, Pageable pageable) {
+    public TransferSliceDTO<TransferDTO> getUserTransfers(String after, int size) {
         Long currentUserId = securityUtils.getCurrentUserId();
 
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException("Карта не найдена"));
-
-        if (!card.getUser().getId().equals(currentUserId)) {
-            throw new UnauthorizedCardAccessException("Доступ к карте запрещен");
-        }
-
-        return transferRepository.findByCardId(cardId, pageable);
+        TransferCursor cursor = TransferCursor.decode(after);
+        List<TransferView> transfers = transferRepository.findUserHistoryBefore(currentUserId,
+                cursor.getCreatedAt(), cursor.getId(), sliceSize(size) + 1);
+        return toSlice(transfers, sliceSize(size));
     }
 
     @Transactional(readOnly = true)
-    public Page<Transfer> getUserTransfers(Pageable pageable) {
+    public Page<TransferDTO> getUserTransfers(Pageable pageable) {
         Long currentUserId = securityUtils.getCurrentUserId();
-        return transferRepository.findByUserId(currentUserId, pageable);
+        if (isNewestFirst(pageable)) {
+            return transferRepository.findUserHistory(currentUserId, historyLimit(pageable), unsorted(pageable))
+                    .map(TransferDTO::from);
+        }
+        return transferRepository.findDtoByUserId(currentUserId, pageable);
     }
 
     @Transactional(readOnly = true)
-    public List<Transfer> getRecentTransfers(int limit) {
+    public List<TransferDTO> getRecentTransfers(int limit) {
         Long currentUserId = securityUtils.getCurrentUserId();
-        Pageable pageable = Pageable.ofSize(limit);
-        Page<Transfer> transfers = transferRepository.findByUserId(currentUserId, pageable);
-        return transfers.getContent();
+        return recentTransfers(currentUserId, limit);
     }
 
     @Transactional(readOnly = true)
-    public List<Transfer> getRecentTransfersForUser(Long userId, int limit) {
-        if (!securityUtils.isAdmin()) {
-            throw new AccessDeniedException("Доступ запрещен. Требуются права администратора");
-        }
+    public List<TransferDTO> getRecentTransfersForUser(Long userId, int limit) {
+        requireAdmin();
+        return recentTransfers(userId, limit);
+    }
+
+    private List<TransferDTO> recentTransfers(Long userId, int limit) {
+        TransferCursor first = TransferCursor.FIRST;
+        return transferRepository.findUserHistoryBefore(userId, first.getCreatedAt(), first.getId(), limit)
+                .stream()
+                .map(TransferDTO::from)
+                .toList();
+    }
 
-        Pageable pageable = Pageable.ofSize(limit);
-        Page<Transfer> transfers = transferRepository.findByUserId(userId, pageable);
-        return transfers.getContent();
+    // Без транзакции: ошибка её коммита после выдачи тела оставила бы слот выгрузки занятым
+    public TransferExporter.ExportBody exportTransfers(TransferExporter.Format format, Long cardId,
+                                                       LocalDateTime from, LocalDateTime to) {
+        Long currentUserId = securityUtils.getCurrentUserId();
+        if (cardId != null) {
+            checkCardAccess(cardId);
+        }
+        return transferExporter.export(format, currentUserId, cardId, from, to);
     }
 
     @Transactional(readOnly = true)
     public BigDecimal getTotalTransferredAmount(Long cardId) {
         checkCardAccess(cardId);
-
-        List<Transfer> outgoingTransfers = transferRepository.findByFromCardId(cardId);
-
-        return outgoingTransfers.stream()
-                .map(Transfer::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return cardTransferStatsService.getSummary(cardId).getTotalSent();
     }
 
     @Transactional(readOnly = true)
     public BigDecimal getTotalReceivedAmount(Long cardId) {
         checkCardAccess(cardId);
+        return cardTransferStatsService.getSummary(cardId).getTotalReceived();
+    }
 
-        List<Transfer> incomingTransfers = transferRepository.findByToCardId(cardId);
+    @Transactional(readOnly = true)
+    public TransferSummaryDTO getCardSummary(Long cardId) {
+        checkCardAccess(cardId);
+        return cardTransferStatsService.getSummary(cardId);
+    }
 
-        return incomingTransfers.stream()
-                .map(Transfer::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    public int rebuildCardStats() {
+        requireAdmin();
+        return cardTransferStatsService.rebuild();
     }
 
-    private void checkTransferAccess(Transfer transfer) {
-        Long currentUserId = securityUtils.getCurrentUserId();
-        Long fromUserId = transfer.getFromCard().getUser().getId();
-        Long toUserId = transfer.getToCard().getUser().getId();
+    public List<Long> findInconsistentCardStats() {
+        requireAdmin();
+        return cardTransferStatsService.findInconsistentCards();
+    }
+
+    // Сортировка по умолчанию обслуживается индексными запросами UNION ALL
+    private boolean isNewestFirst(Pageable pageable) {
+        Sort sort = pageable.getSort();
+        return sort.isUnsorted() || sort.equals(Sort.by(Sort.Direction.DESC, "createdAt"));
+    }
+
+    private long historyLimit(Pageable pageable) {
+        return pageable.getOffset() + pageable.getPageSize();
+    }
+
+    private Pageable unsorted(Pageable pageable) {
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+    }
 
-        if (!currentUserId.equals(fromUserId) && !currentUserId.equals(toUserId)) {
-            throw new UnauthorizedCardAccessException("Доступ к переводу запрещен");
+    private int sliceSize(int size) {
+        return Math.max(1, Math.min(size, MAX_SLICE_SIZE));
+    }
+
+    // Запрашивается на одну запись больше страницы, чтобы узнать о следующей без COUNT
+    private TransferSliceDTO<TransferDTO> toSlice(List<TransferView> transfers, int size) {
+        boolean hasNext = transfers.size() > size;
+        List<TransferDTO> content = new ArrayList<>(Math.min(transfers.size(), size));
+        for (int i = 0; i < transfers.size() && i < size; i++) {
+            content.add(TransferDTO.from(transfers.get(i)));
+        }
+
+        TransferDTO last = hasNext ? content.get(size - 1) : null;
+        String nextCursor = last != null ? TransferCursor.after(last.getCreatedAt(), last.getId()).encode() : null;
+        return new TransferSliceDTO<>(content, nextCursor, hasNext);
+    }
+
+    private void requireAdmin() {
+        if (!securityUtils.isAdmin()) {
+            throw new AccessDeniedException("Доступ запрещен. Требуются права администратора");
         }
     }
 
     private void checkCardAccess(Long cardId) {
         Long currentUserId = securityUtils.getCurrentUserId();
-        Card card = cardRepository.findById(cardId)
+        Long ownerId = cardRepository.findUserIdById(cardId)
                 .orElseThrow(() -> new CardNotFoundException("Карта не найдена"));
 
-        if (!card.getUser().getId().equals(currentUserId)) {
+        if (!ownerId.equals(currentUserId)) {
             throw new UnauthorizedCardAccessException("Доступ к карте запрещен");
         }
     }
@@ -6,6 +6,8 @@ import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.UserAlreadyExistsException;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.TokenDenylist;
+import com.example.bankcards.security.UserCache;
 import com.example.bankcards.util.SecurityUtils;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -14,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -25,13 +28,19 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final SecurityUtils securityUtils;
+    private final TokenDenylist tokenDenylist;
+    private final UserCache userCache;
 
     public UserService(UserRepository userRepository,
                        PasswordEncoder passwordEncoder,
-                       SecurityUtils securityUtils) {
+                       SecurityUtils securityUtils,
+                       TokenDenylist tokenDenylist,
+                       UserCache userCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.securityUtils = securityUtils;
+        this.tokenDenylist = tokenDenylist;
+        this.userCache = userCache;
     }
 
     public UserDTO registerUser(RegisterRequestDTO request) {
@@ -69,7 +78,7 @@ public class UserService {
     }
 
     public List<UserDTO> getAllUsers() {
-        return userRepository.findAll().stream()
+        return userRepository.findAllWithRoles().stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
     }
@@ -77,6 +86,7 @@ public class UserService {
     public UserDTO updateUser(Long id, UserDTO userDTO) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Пользователь не найден с id: " + id));
+        userCache.evict(user.getEmail());
 
         // Обновляем поля
         if (userDTO.getEmail() != null && !userDTO.getEmail().equals(user.getEmail())) {
@@ -96,14 +106,18 @@ public class UserService {
             }
         }
 
+        // В токене email и роли, поэтому выданные токены больше не соответствуют пользователю
+        revokeTokens(user);
         User updatedUser = userRepository.save(user);
         return convertToDTO(updatedUser);
     }
 
     public void deleteUser(Long userId) {
-        if (!userRepository.existsById(userId)) {
-            throw new RuntimeException("Пользователь не найден с id: " + userId);
-        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("Пользователь не найден с id: " + userId));
+        userCache.evict(user.getEmail());
+        // Отзыв переживает удаление строки: остальные узлы прочитают его из token_revocations
+        tokenDenylist.revokeDeleted(userId, LocalDateTime.now());
         userRepository.deleteById(userId);
     }
 
@@ -116,6 +130,8 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("Пользователь не найден с id: " + userId));
 
         user.addRole(Role.ROLE_ADMIN);
+        userCache.evict(user.getEmail());
+        revokeTokens(user);
         userRepository.save(user);
     }
 
@@ -128,14 +144,8 @@ public class UserService {
         if (!user.getRoles().contains(Role.ROLE_USER)) {
             user.addRole(Role.ROLE_USER);
         }
-        userRepository.save(user);
-    }
-
-    @Transactional
-    public void updateLastLogin(String email) {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("Пользователь не найден с email: " + email));
-        user.setLastLogin(LocalDateTime.now());
+        userCache.evict(user.getEmail());
+        revokeTokens(user);
         userRepository.save(user);
     }
 
@@ -144,6 +154,10 @@ public class UserService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Пользователь не найден с id: " + userId));
         user.setEnabled(enabled);
+        userCache.evict(user.getEmail());
+        if (!enabled) {
+            revokeTokens(user);
+        }
         userRepository.save(user);
     }
 
@@ -161,26 +175,35 @@ public class UserService {
         }
 
         user.setPassword(passwordEncoder.encode(newPassword));
+        userCache.evict(user.getEmail());
+        revokeTokens(user);
         userRepository.save(user);
     }
 
+    public Map<String, Number> getUserCacheStats() {
+        return userCache.getStats();
+    }
+
     public long countUsers() {
         return userRepository.count();
     }
 
     public long countUsersByRole(Role role) {
-        return userRepository.findAll().stream()
-                .filter(user -> user.getRoles().contains(role))
-                .count();
+        return userRepository.countByRole(role);
     }
 
     public List<UserDTO> searchUsers(String searchTerm) {
-        return userRepository.findAll().stream()
-                .filter(user -> user.getEmail().toLowerCase().contains(searchTerm.toLowerCase()))
+        return userRepository.findByEmailContainingIgnoreCaseOrderById(searchTerm).stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
     }
 
+    private void revokeTokens(User user) {
+        LocalDateTime now = LocalDateTime.now();
+        user.setTokensRevokedAt(now);
+        tokenDenylist.revoke(user.getId(), now);
+    }
+
     private UserDTO convertToDTO(User user) {
         UserDTO dto = new UserDTO();
         dto.setId(user.getId());
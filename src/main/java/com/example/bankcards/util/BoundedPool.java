@@ -0,0 +1,35 @@
+package com.example.bankcards.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Пул дорогих в создании объектов без внутренней синхронизации (Cipher, Mac).
+ * В отличие от ThreadLocal держит не больше maxIdle экземпляров при любом числе потоков, в том числе виртуальных.
+ */
+public final class BoundedPool<T> {
+
+    private final BlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    public BoundedPool(int maxIdle, Supplier<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+        this.factory = factory;
+    }
+
+    // Пустой пул не блокирует вызов: создаётся новый экземпляр
+    public T borrow() {
+        T instance = idle.poll();
+        return instance != null ? instance : factory.get();
+    }
+
+    // Лишний экземпляр при полном пуле просто отбрасывается
+    public void release(T instance) {
+        idle.offer(instance);
+    }
+
+    public int idleCount() {
+        return idle.size();
+    }
+}
@@ -6,49 +6,200 @@ import org.springframework.stereotype.Component;
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
+/**
+ * Шифрование номеров карт версионированными ключами. Шифротекст имеет вид "kid:base64",
+ * строки без префикса зашифрованы прежним единственным ключом app.encryption.key.
+ */
 @Component
 public class CardNumberEncryptor {
 
     private static final String ALGORITHM = "AES";
     private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    // В Base64 нет двоеточия, поэтому префикс kid однозначно отделяется от шифротекста
+    private static final char KEY_ID_SEPARATOR = ':';
+    private static final Pattern KEY_ID_PATTERN = Pattern.compile("[A-Za-z0-9.-]{1,20}");
 
-    private final SecretKeySpec secretKey;
+    private final KeyCiphers legacyKey;
+    private final Map<String, KeyCiphers> keysById = new HashMap<>();
+    private final KeyCiphers activeKey;
 
     public CardNumberEncryptor(AppProperties appProperties) {
-        String encryptionKey = appProperties.getEncryption().getKey();
+        AppProperties.Encryption encryption = appProperties.getEncryption();
 
-        if (encryptionKey == null || encryptionKey.length() != 32) {
-            throw new IllegalArgumentException(
-                    "Encryption key must be 32 characters for AES-256. " +
-                            "Current key length: " + (encryptionKey != null ? encryptionKey.length() : "null")
-            );
+        this.legacyKey = encryption.getKey() != null ? new KeyCiphers(null, encryption.getKey()) : null;
+        encryption.getKeys().forEach((keyId, key) -> {
+            if (!KEY_ID_PATTERN.matcher(keyId).matches()) {
+                throw new IllegalArgumentException("Encryption key id must match " + KEY_ID_PATTERN + ": " + keyId);
+            }
+            keysById.put(keyId, new KeyCiphers(keyId, key));
+        });
+
+        if (encryption.getActiveKeyId() != null) {
+            this.activeKey = keysById.get(encryption.getActiveKeyId());
+            if (activeKey == null) {
+                throw new IllegalArgumentException("Active encryption key id is not configured: "
+                        + encryption.getActiveKeyId());
+            }
+        } else if (legacyKey != null) {
+            // Без версионированных ключей новые строки пишутся в прежнем формате без префикса
+            this.activeKey = legacyKey;
+        } else {
+            throw new IllegalArgumentException("Either app.encryption.key or app.encryption.active-key-id must be set");
         }
+    }
 
-        this.secretKey = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    // null, если шифрование идёт прежним ключом без версии
+    public String getActiveKeyId() {
+        return activeKey.keyId;
+    }
+
+    public boolean isEncryptedWithActiveKey(String encryptedData) {
+        return activeKey == keyFor(encryptedData);
     }
 
     public String encrypt(String data) {
-        try {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            byte[] encryptedBytes = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedBytes);
-        } catch (Exception e) {
-            throw new RuntimeException("Error encrypting card number", e);
-        }
+        return activeKey.withCipher(activeKey.encryptCiphers, "Error encrypting card number",
+                cipher -> activeKey.encrypt(cipher, data));
     }
 
     public String decrypt(String encryptedData) {
-        try {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            byte[] decodedBytes = Base64.getDecoder().decode(encryptedData);
-            byte[] decryptedBytes = cipher.doFinal(decodedBytes);
-            return new String(decryptedBytes, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            throw new RuntimeException("Error decrypting card number", e);
+        KeyCiphers key = keyFor(encryptedData);
+        return key.withCipher(key.decryptCiphers, "Error decrypting card number",
+                cipher -> key.decrypt(cipher, encryptedData));
+    }
+
+    // Расшифровка старым ключом и шифрование активным, для ротации ключей
+    public String reencrypt(String encryptedData) {
+        return encrypt(decrypt(encryptedData));
+    }
+
+    // Для списков и импорта: один Cipher из пула на всю пачку
+    public List<String> encryptAll(Collection<String> data) {
+        return activeKey.withCipher(activeKey.encryptCiphers, "Error encrypting card number", cipher -> {
+            List<String> result = new ArrayList<>(data.size());
+            for (String value : data) {
+                result.add(activeKey.encrypt(cipher, value));
+            }
+            return result;
+        });
+    }
+
+    public List<String> decryptAll(Collection<String> encryptedData) {
+        List<String> result = new ArrayList<>(encryptedData.size());
+        List<String> sameKey = new ArrayList<>();
+        KeyCiphers currentKey = null;
+        // Подряд идущие строки одного ключа расшифровываются одним Cipher
+        for (String value : encryptedData) {
+            KeyCiphers key = keyFor(value);
+            if (key != currentKey && !sameKey.isEmpty()) {
+                result.addAll(decryptAll(currentKey, sameKey));
+                sameKey.clear();
+            }
+            currentKey = key;
+            sameKey.add(value);
+        }
+        if (!sameKey.isEmpty()) {
+            result.addAll(decryptAll(currentKey, sameKey));
+        }
+        return result;
+    }
+
+    private List<String> decryptAll(KeyCiphers key, List<String> encryptedData) {
+        return key.withCipher(key.decryptCiphers, "Error decrypting card number", cipher -> {
+            List<String> result = new ArrayList<>(encryptedData.size());
+            for (String value : encryptedData) {
+                result.add(key.decrypt(cipher, value));
+            }
+            return result;
+        });
+    }
+
+    private KeyCiphers keyFor(String encryptedData) {
+        int separator = encryptedData.indexOf(KEY_ID_SEPARATOR);
+        if (separator < 0) {
+            if (legacyKey == null) {
+                throw new RuntimeException("Error decrypting card number: legacy encryption key is not configured");
+            }
+            return legacyKey;
         }
+        KeyCiphers key = keysById.get(encryptedData.substring(0, separator));
+        if (key == null) {
+            throw new RuntimeException("Error decrypting card number: unknown encryption key id "
+                    + encryptedData.substring(0, separator));
+        }
+        return key;
+    }
+
+    // Ключ вместе с пулами Cipher: Cipher.getInstance ищет провайдера и выделяет заметно больше,
+    // чем само шифрование 16 цифр
+    private static final class KeyCiphers {
+
+        private final String keyId;
+        private final String prefix;
+        private final SecretKeySpec secretKey;
+        private final BoundedPool<Cipher> encryptCiphers;
+        private final BoundedPool<Cipher> decryptCiphers;
+
+        private KeyCiphers(String keyId, String key) {
+            if (key == null || key.length() != 32) {
+                throw new IllegalArgumentException(
+                        "Encryption key must be 32 characters for AES-256. " +
+                                "Current key length: " + (key != null ? key.length() : "null")
+                );
+            }
+            this.keyId = keyId;
+            this.prefix = keyId != null ? keyId + KEY_ID_SEPARATOR : "";
+            this.secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            this.encryptCiphers = new BoundedPool<>(POOL_SIZE, () -> newCipher(Cipher.ENCRYPT_MODE));
+            this.decryptCiphers = new BoundedPool<>(POOL_SIZE, () -> newCipher(Cipher.DECRYPT_MODE));
+        }
+
+        private String encrypt(Cipher cipher, String data) throws GeneralSecurityException {
+            return prefix + Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private String decrypt(Cipher cipher, String encryptedData) throws GeneralSecurityException {
+            byte[] decoded = Base64.getDecoder().decode(encryptedData.substring(prefix.length()));
+            return new String(cipher.doFinal(decoded), StandardCharsets.UTF_8);
+        }
+
+        // doFinal возвращает Cipher в исходное состояние после init, поэтому повторный init не нужен
+        private <R> R withCipher(BoundedPool<Cipher> pool, String error, CipherCall<R> call) {
+            Cipher cipher = pool.borrow();
+            R result;
+            try {
+                result = call.apply(cipher);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                // После ошибки состояние Cipher не определено, в пул он не возвращается
+                throw new RuntimeException(error, e);
+            }
+            pool.release(cipher);
+            return result;
+        }
+
+        private Cipher newCipher(int mode) {
+            try {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(mode, secretKey);
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Error initializing card number cipher", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CipherCall<R> {
+        R apply(Cipher cipher) throws GeneralSecurityException;
     }
-}
\ No newline at end of file
+}
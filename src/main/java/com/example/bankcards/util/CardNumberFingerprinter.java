@@ -0,0 +1,71 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.config.AppProperties;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Слепой индекс номера карты: HMAC-SHA256 от цифр номера на отдельном ключе.
+ * Детерминирован, поэтому по нему ищут и проверяют уникальность, не расшифровывая номера.
+ */
+@Component
+public class CardNumberFingerprinter {
+
+    public static final int FINGERPRINT_LENGTH = 32;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final SecretKeySpec key;
+    // Mac не потокобезопасен, а init на каждый вызов дороже самого HMAC
+    private final BoundedPool<Mac> macs;
+
+    public CardNumberFingerprinter(AppProperties appProperties) {
+        String fingerprintKey = appProperties.getEncryption().getFingerprintKey();
+
+        if (fingerprintKey == null || fingerprintKey.length() < 32) {
+            throw new IllegalArgumentException(
+                    "Fingerprint key must be at least 32 characters. " +
+                            "Current key length: " + (fingerprintKey != null ? fingerprintKey.length() : "null")
+            );
+        }
+
+        this.key = new SecretKeySpec(fingerprintKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = new BoundedPool<>(POOL_SIZE, this::newMac);
+    }
+
+    // Пробелы и дефисы не влияют на отпечаток: "4111 1111 1111 1111" и "4111111111111111" — одна карта
+    public byte[] fingerprint(CharSequence cardNumber) {
+        byte[] digits = new byte[cardNumber.length()];
+        int count = 0;
+        for (int i = 0; i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits[count++] = (byte) c;
+            }
+        }
+
+        // doFinal сбрасывает Mac к состоянию после init. После исключения состояние Mac
+        // не определено, в пул он не возвращается
+        Mac mac = macs.borrow();
+        mac.update(digits, 0, count);
+        byte[] fingerprint = mac.doFinal();
+        macs.release(mac);
+        return fingerprint;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Error initializing card number fingerprint", e);
+        }
+    }
+}
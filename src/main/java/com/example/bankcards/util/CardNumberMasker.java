@@ -2,47 +2,61 @@ package com.example.bankcards.util;
 
 import org.springframework.stereotype.Component;
 
-import java.util.regex.Pattern;
-
+/**
+ * Проверка и маскирование номеров карт проходом по символам, без регулярных выражений
+ * и промежуточных строк. Принимает CharSequence, чтобы импорт мог передавать срезы буфера.
+ */
 @Component
 public class CardNumberMasker {
 
-    private static final Pattern CARD_PATTERN = Pattern.compile("\\b(\\d{4})(\\d{4})(\\d{4})(\\d{4})\\b");
-    private static final String MASKED_TEMPLATE = "**** **** **** %s";
+    private static final int CARD_NUMBER_LENGTH = 16;
+    private static final int VISIBLE_DIGITS = 4;
+    private static final String MASK_PREFIX = "**** **** **** ";
 
-    public String mask(String cardNumber) {
-        if (cardNumber == null || cardNumber.trim().isEmpty()) {
+    public String mask(CharSequence cardNumber) {
+        if (cardNumber == null) {
             return "";
         }
 
-        String cleanNumber = cardNumber.replaceAll("[^\\d]", "");
-
-        if (cleanNumber.length() < 4) {
-            return cardNumber;
+        // Идём с конца: достаточно найти последние четыре цифры
+        char[] masked = maskTemplate();
+        int found = 0;
+        for (int i = cardNumber.length() - 1; i >= 0 && found < VISIBLE_DIGITS; i--) {
+            char c = cardNumber.charAt(i);
+            if (isDigit(c)) {
+                masked[masked.length - 1 - found++] = c;
+            }
         }
 
-        String lastFour = cleanNumber.substring(cleanNumber.length() - 4);
-        return String.format(MASKED_TEMPLATE, lastFour);
+        if (found < VISIBLE_DIGITS) {
+            return isBlank(cardNumber) ? "" : cardNumber.toString();
+        }
+        return new String(masked);
     }
 
-    public String maskWithPattern(String cardNumber, String pattern) {
-        if (cardNumber == null || cardNumber.trim().isEmpty()) {
+    public String maskWithPattern(CharSequence cardNumber, CharSequence pattern) {
+        if (cardNumber == null) {
+            return "";
+        }
+
+        int totalDigits = countDigits(cardNumber);
+        if (totalDigits == 0 && isBlank(cardNumber)) {
             return "";
         }
 
-        String cleanNumber = cardNumber.replaceAll("[^\\d]", "");
-        StringBuilder masked = new StringBuilder();
+        StringBuilder masked = new StringBuilder(pattern.length());
         int digitIndex = 0;
+        int position = 0;
 
         for (int i = 0; i < pattern.length(); i++) {
             char c = pattern.charAt(i);
             if (c == '#') {
-                if (digitIndex < cleanNumber.length()) {
-                    if (digitIndex >= cleanNumber.length() - 4) {
-                        masked.append(cleanNumber.charAt(digitIndex));
-                    } else {
-                        masked.append('*');
+                if (digitIndex < totalDigits) {
+                    while (!isDigit(cardNumber.charAt(position))) {
+                        position++;
                     }
+                    char digit = cardNumber.charAt(position++);
+                    masked.append(digitIndex >= totalDigits - VISIBLE_DIGITS ? digit : '*');
                     digitIndex++;
                 }
             } else {
@@ -53,38 +67,78 @@ public class CardNumberMasker {
         return masked.toString();
     }
 
-    public boolean isValidCardNumber(String cardNumber) {
-        if (cardNumber == null) {
-            return false;
-        }
-
-        String cleanNumber = cardNumber.replaceAll("[^\\d]", "");
+    public boolean isValidCardNumber(CharSequence cardNumber) {
+        return cardNumber != null && scan(cardNumber, null);
+    }
 
-        if (cleanNumber.length() != 16) {
-            return false;
+    // Проверка Луна и маска за один проход; null, если номер невалиден
+    public String maskIfValid(CharSequence cardNumber) {
+        if (cardNumber == null) {
+            return null;
         }
-
-        return isValidLuhn(cleanNumber);
+        char[] masked = maskTemplate();
+        return scan(cardNumber, masked) ? new String(masked) : null;
     }
 
-    private boolean isValidLuhn(String number) {
+    // Разделители (пробелы, дефисы) пропускаются; последние цифры попадают в masked, если он передан
+    private boolean scan(CharSequence cardNumber, char[] masked) {
         int sum = 0;
-        boolean alternate = false;
+        int digits = 0;
 
-        for (int i = number.length() - 1; i >= 0; i--) {
-            int digit = Character.getNumericValue(number.charAt(i));
+        for (int i = cardNumber.length() - 1; i >= 0; i--) {
+            char c = cardNumber.charAt(i);
+            if (!isDigit(c)) {
+                continue;
+            }
+            if (digits == CARD_NUMBER_LENGTH) {
+                return false;
+            }
+            if (masked != null && digits < VISIBLE_DIGITS) {
+                masked[masked.length - 1 - digits] = c;
+            }
 
-            if (alternate) {
+            int digit = c - '0';
+            if ((digits & 1) == 1) {
                 digit *= 2;
                 if (digit > 9) {
-                    digit = (digit % 10) + 1;
+                    digit -= 9;
                 }
             }
-
             sum += digit;
-            alternate = !alternate;
+            digits++;
         }
 
-        return (sum % 10 == 0);
+        return digits == CARD_NUMBER_LENGTH && sum % 10 == 0;
+    }
+
+    private char[] maskTemplate() {
+        char[] masked = new char[MASK_PREFIX.length() + VISIBLE_DIGITS];
+        MASK_PREFIX.getChars(0, MASK_PREFIX.length(), masked, 0);
+        return masked;
+    }
+
+    private int countDigits(CharSequence value) {
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (isDigit(value.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Как String.trim: пробельными считаются символы не больше ' '
+    private boolean isBlank(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Только ASCII-цифры, как \d в прежнем replaceAll
+    private boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
-}
\ No newline at end of file
+}
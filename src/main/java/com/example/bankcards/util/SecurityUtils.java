@@ -1,19 +1,33 @@
 package com.example.bankcards.util;
 
+import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
-import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthenticatedUser;
+import com.example.bankcards.security.UserCache;
+import jakarta.servlet.ServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class SecurityUtils {
 
-    private final UserRepository userRepository;
+    private static final Logger logger = LoggerFactory.getLogger(SecurityUtils.class);
+
+    private static final String CURRENT_USER_ATTRIBUTE = SecurityUtils.class.getName() + ".currentUser";
+    private static final String USER_LOOKUPS_ATTRIBUTE = SecurityUtils.class.getName() + ".userLookups";
+
+    private final UserCache userCache;
 
-    public SecurityUtils(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public SecurityUtils(UserCache userCache) {
+        this.userCache = userCache;
     }
 
     public String getCurrentUserEmail() {
@@ -24,26 +38,76 @@ public class SecurityUtils {
         return authentication.getName();
     }
 
+    // В рамках HTTP-запроса пользователь читается из БД не больше одного раза
     public User getCurrentUser() {
         String email = getCurrentUserEmail();
         if (email == null) {
             throw new UsernameNotFoundException("Пользователь не аутентифицирован");
         }
-        return userRepository.findByEmail(email)
+
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null
+                && request.getAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof User user
+                && email.equals(user.getEmail())) {
+            return user;
+        }
+
+        if (request != null) {
+            countLookup(request);
+        }
+        User user = userCache.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("Пользователь не найден с email: " + email));
+        if (request != null) {
+            request.setAttribute(CURRENT_USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+        return user;
     }
 
+    // Сколько раз текущий пользователь запрашивался из кэша или БД в рамках этого запроса
+    public static int getUserLookups(ServletRequest request) {
+        return request.getAttribute(USER_LOOKUPS_ATTRIBUTE) instanceof AtomicInteger lookups ? lookups.get() : 0;
+    }
+
+    // id и роли берутся из principal, собранного по токену; БД читается только для других principal
     public Long getCurrentUserId() {
+        Object principal = getAuthentication().getPrincipal();
+        if (principal instanceof AuthenticatedUser user) {
+            return user.id();
+        }
+        if (principal instanceof User user) {
+            return user.getId();
+        }
         return getCurrentUser().getId();
     }
 
     public boolean isAdmin() {
-        User user = getCurrentUser();
-        return user.getRoles().stream()
-                .anyMatch(role -> role.name().equals("ROLE_ADMIN"));
+        return getAuthentication().getAuthorities().stream()
+                .anyMatch(authority -> Role.ROLE_ADMIN.name().equals(authority.getAuthority()));
     }
 
     public boolean isCurrentUser(Long userId) {
         return getCurrentUserId().equals(userId);
     }
+
+    // Счётчик живёт в атрибутах запроса и пишется в лог, когда запрос завершается
+    private void countLookup(RequestAttributes request) {
+        Object counted = request.getAttribute(USER_LOOKUPS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (counted instanceof AtomicInteger lookups) {
+            lookups.incrementAndGet();
+            return;
+        }
+        AtomicInteger lookups = new AtomicInteger(1);
+        request.setAttribute(USER_LOOKUPS_ATTRIBUTE, lookups, RequestAttributes.SCOPE_REQUEST);
+        request.registerDestructionCallback(USER_LOOKUPS_ATTRIBUTE,
+                () -> logger.debug("Current user looked up {} time(s) during request", lookups.get()),
+                RequestAttributes.SCOPE_REQUEST);
+    }
+
+    private Authentication getAuthentication() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            throw new UsernameNotFoundException("Пользователь не аутентифицирован");
+        }
+        return authentication;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,343 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.controller.TransferController;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardTransferStatsRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.service.AsyncTransferDispatcher;
+import com.example.bankcards.service.TransferProcessor;
+import com.example.bankcards.service.TransferService;
+import com.example.bankcards.util.SecurityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncTransferTest {
+
+    private static final Long USER_ID = 1L;
+
+    private final AppProperties appProperties = new AppProperties();
+    // PENDING-переводы "в БД" в порядке создания
+    private final List<Transfer> pending = new CopyOnWriteArrayList<>();
+    private final List<Long> processed = new CopyOnWriteArrayList<>();
+    // Вызовы complete, включая упавшие; пропущенные диспетчером сюда не попадают
+    private final List<Long> attempts = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private final CountDownLatch firstTransferReleased = new CountDownLatch(1);
+    private final Map<Long, Card> cards = new HashMap<>();
+    private final List<Long> dispatched = new ArrayList<>();
+    private AsyncTransferDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        firstTransferReleased.countDown();
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void testAsyncTransferIsAcceptedAsPending() {
+        TransferService transferService = new TransferService(null, null, securityUtils(),
+                submittingProcessor(), null, recordingDispatcher(), null, null);
+
+        ResponseEntity<TransferDTO> response = new TransferController(transferService)
+                .createTransfer(request(1L, 2L, "10.00"), null, "async");
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("PENDING", response.getBody().getStatus());
+        assertEquals(List.of(10L), dispatched);
+    }
+
+    @Test
+    void testOverflowedCardKeepsCreationOrder() throws InterruptedException {
+        appProperties.getTransfers().setAsyncWorkers(1);
+        appProperties.getTransfers().setAsyncQueueCapacity(2);
+        dispatcher = new AsyncTransferDispatcher(blockingProcessor(), pendingRepository(), appProperties);
+
+        // 1 выполняется и ждёт, 2 и 3 в очереди, 4 не помещается, 5 обгонять 4 не должен
+        for (long id = 1; id <= 5; id++) {
+            dispatcher.dispatch(pendingTransfer(id, 1L));
+        }
+
+        // Sweep во время работы очереди не ставит повторно уже стоящие в ней переводы
+        dispatcher.sweepPending();
+        firstTransferReleased.countDown();
+        awaitProcessed(3);
+        assertEquals(List.of(1L, 2L, 3L), processed);
+
+        dispatcher.sweepPending();
+        awaitProcessed(5);
+
+        // Очередь карты вычерпана: следующий перевод снова идёт в очередь сразу
+        dispatcher.dispatch(pendingTransfer(6L, 1L));
+        awaitProcessed(6);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), processed);
+    }
+
+    @Test
+    void testFailedTransferIsNotOvertakenByLaterOnes() throws InterruptedException {
+        appProperties.getTransfers().setAsyncWorkers(1);
+        dispatcher = new AsyncTransferDispatcher(failingOnceProcessor(1L), pendingRepository(), appProperties);
+
+        // 1 падает на инфраструктурной ошибке, 2 и 3 уже стоят за ним в очереди
+        for (long id = 1; id <= 3; id++) {
+            dispatcher.dispatch(pendingTransfer(id, 1L));
+        }
+        // Новый перевод карты тоже ждёт повтора первого
+        awaitAttempts(1);
+        dispatcher.dispatch(pendingTransfer(4L, 1L));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processed.size() < 4 && System.nanoTime() < deadline) {
+            dispatcher.sweepPending();
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L), processed);
+        assertEquals(List.of(1L, 1L, 2L, 3L, 4L), attempts);
+    }
+
+    @Test
+    void testCompleteMarksTransferFailedWhenFundsAreInsufficient() {
+        Card from = card(1L, "100.00");
+        Card to = card(2L, "0.00");
+        Transfer transfer = new Transfer(from, to, new BigDecimal("150.00"), null);
+        transfer.setId(1L);
+        transfer.setStatus("PENDING");
+
+        completingProcessor(transfer).complete(1L);
+
+        assertEquals("FAILED", transfer.getStatus());
+        assertEquals("Недостаточно средств на карте", transfer.getFailureReason());
+        assertEquals(0, new BigDecimal("100.00").compareTo(from.getBalance()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(to.getBalance()));
+    }
+
+    @Test
+    void testCompleteMovesBalanceOnce() {
+        Card from = card(1L, "100.00");
+        Card to = card(2L, "0.00");
+        Transfer transfer = new Transfer(from, to, new BigDecimal("40.00"), null);
+        transfer.setId(1L);
+        transfer.setStatus("PENDING");
+        TransferProcessor processor = completingProcessor(transfer);
+
+        processor.complete(1L);
+        processor.complete(1L);
+
+        assertEquals("COMPLETED", transfer.getStatus());
+        assertEquals(0, new BigDecimal("60.00").compareTo(from.getBalance()));
+        assertEquals(0, new BigDecimal("40.00").compareTo(to.getBalance()));
+    }
+
+    private void awaitProcessed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processed.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, processed.size(), "Переводы не выполнены: " + processed);
+    }
+
+    private void awaitAttempts(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (attempts.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, attempts.size(), "Очередь не разобрана: " + attempts);
+    }
+
+    private Transfer pendingTransfer(Long id, Long fromCardId) {
+        Transfer transfer = new Transfer(card(fromCardId, "100.00"), card(fromCardId + 100, "0.00"), BigDecimal.ONE, null);
+        transfer.setId(id);
+        transfer.setStatus("PENDING");
+        transfer.setCreatedAt(LocalDateTime.now());
+        pending.add(transfer);
+        return transfer;
+    }
+
+    private Card card(Long id, String balance) {
+        User owner = new User("user@bank.com", "secret");
+        owner.setId(USER_ID);
+        Card card = new Card("enc" + id, "**** **** **** 000" + id, "OWNER", LocalDate.now().plusYears(3), owner);
+        card.setId(id);
+        card.setBalance(new BigDecimal(balance));
+        cards.put(id, card);
+        return card;
+    }
+
+    private TransferRequestDTO request(Long from, Long to, String amount) {
+        TransferRequestDTO request = new TransferRequestDTO();
+        request.setFromCardId(from);
+        request.setToCardId(to);
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+
+    // Первый перевод держит единственного исполнителя, пока тест не отпустит его
+    private TransferProcessor blockingProcessor() {
+        return new TransferProcessor(null, null, null, null, appProperties) {
+            @Override
+            public void complete(Long transferId) {
+                if (transferId == 1L) {
+                    try {
+                        firstTransferReleased.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                pending.removeIf(transfer -> transfer.getId().equals(transferId));
+                processed.add(transferId);
+            }
+        };
+    }
+
+    // Первая попытка перевода failingId падает, как при исчерпанных повторах блокировки
+    private TransferProcessor failingOnceProcessor(Long failingId) {
+        return new TransferProcessor(null, null, null, null, appProperties) {
+            @Override
+            public void complete(Long transferId) {
+                attempts.add(transferId);
+                if (transferId.equals(failingId) && !failed.getAndSet(true)) {
+                    throw new IllegalStateException("Lock wait timeout exceeded");
+                }
+                pending.removeIf(transfer -> transfer.getId().equals(transferId));
+                processed.add(transferId);
+            }
+        };
+    }
+
+    private TransferProcessor submittingProcessor() {
+        return new TransferProcessor(null, null, null, null, appProperties) {
+            @Override
+            public Transfer submit(Long userId, TransferRequestDTO requestDTO,
+                                   Consumer<Transfer> afterSave) {
+                Transfer transfer = new Transfer(card(requestDTO.getFromCardId(), "100.00"),
+                        card(requestDTO.getToCardId(), "0.00"), requestDTO.getAmount(), null);
+                transfer.setId(10L);
+                transfer.setStatus("PENDING");
+                afterSave.accept(transfer);
+                return transfer;
+            }
+        };
+    }
+
+    private TransferProcessor completingProcessor(Transfer transfer) {
+        return new TransferProcessor(cardRepository(), transferRepository(transfer), statsRepository(),
+                transactionManager(), appProperties);
+    }
+
+    private AsyncTransferDispatcher recordingDispatcher() {
+        return new AsyncTransferDispatcher(null, null, appProperties) {
+            @Override
+            public void dispatch(Transfer transfer) {
+                dispatched.add(transfer.getId());
+            }
+        };
+    }
+
+    private SecurityUtils securityUtils() {
+        return new SecurityUtils(null) {
+            @Override
+            public Long getCurrentUserId() {
+                return USER_ID;
+            }
+        };
+    }
+
+    private TransferRepository pendingRepository() {
+        return (TransferRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findPendingByFromCardId":
+                            return pending.stream()
+                                    .filter(transfer -> transfer.getFromCard().getId().equals(args[0]))
+                                    .toList();
+                        // Возраст не проверяем: sweep видит и переводы, ещё стоящие в очереди
+                        case "findPendingCreatedBefore":
+                            return List.copyOf(pending);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private TransferRepository transferRepository(Transfer transfer) {
+        return (TransferRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findByIdForUpdate")) {
+                        return Optional.of(transfer);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private CardRepository cardRepository() {
+        return (CardRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findUserIdById":
+                            return Optional.of(USER_ID);
+                        case "findByIdAndUserIdForUpdate":
+                            return Optional.ofNullable(cards.get(args[0]));
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private CardTransferStatsRepository statsRepository() {
+        return (CardTransferStatsRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardTransferStatsRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("addActivity")) {
+                        return 1;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return (TransactionStatus) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{TransactionStatus.class}, (proxy, method, args) ->
+                                method.getReturnType() == boolean.class ? false : null);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.AuthenticationRequestDTO;
+import com.example.bankcards.dto.AuthenticationResponseDTO;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.JwtService;
+import com.example.bankcards.security.PasswordCheckExecutor;
+import com.example.bankcards.service.AuthenticationService;
+import com.example.bankcards.service.LastLoginRecorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthenticationServiceTest {
+
+    private static final String SECRET = "mySuperSecretKeyForBankCardsApplication2024WithSpringBoot3AndJWT";
+
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(4);
+    private final AppProperties appProperties = appProperties();
+    private final PasswordCheckExecutor passwordCheckExecutor = new PasswordCheckExecutor(passwordEncoder, appProperties);
+    // Текущая строка users: тест меняет её так, как это сделал бы другой узел
+    private User row = user("old-password", true);
+    private int queries;
+
+    @AfterEach
+    void shutdown() {
+        passwordCheckExecutor.shutdown();
+    }
+
+    @Test
+    void testLoginReadsCurrentRowOnEveryAttempt() {
+        AuthenticationService authenticationService = authenticationService();
+        assertEquals("user@bank.com", login(authenticationService, "old-password").getEmail());
+
+        // Пароль сменили на другом узле: старый сразу перестаёт подходить
+        row = user("new-password", true);
+        assertThrows(BadCredentialsException.class, () -> login(authenticationService, "old-password"));
+        assertEquals("user@bank.com", login(authenticationService, "new-password").getEmail());
+        assertEquals(3, queries);
+    }
+
+    @Test
+    void testDisabledUserGetsNoToken() {
+        AuthenticationService authenticationService = authenticationService();
+        login(authenticationService, "old-password");
+
+        row = user("old-password", false);
+        assertThrows(BadCredentialsException.class, () -> login(authenticationService, "old-password"));
+    }
+
+    private AuthenticationResponseDTO login(AuthenticationService authenticationService, String password) {
+        AuthenticationRequestDTO request = new AuthenticationRequestDTO();
+        request.setEmail("user@bank.com");
+        request.setPassword(password);
+        try {
+            return authenticationService.authenticate(request).join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private AuthenticationService authenticationService() {
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findByEmail")) {
+                        queries++;
+                        return Optional.of(row);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        LastLoginRecorder lastLoginRecorder = new LastLoginRecorder(null) {
+            @Override
+            public void record(Long userId) {
+            }
+        };
+        return new AuthenticationService(userRepository, passwordCheckExecutor, new JwtService(appProperties),
+                lastLoginRecorder);
+    }
+
+    private User user(String password, boolean enabled) {
+        User user = new User("user@bank.com", passwordEncoder.encode(password));
+        user.setId(7L);
+        user.setEnabled(enabled);
+        user.addRole(Role.ROLE_USER);
+        return user;
+    }
+
+    private AppProperties appProperties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().getJwt().setSecret(SECRET);
+        appProperties.getSecurity().getJwt().setExpiration(60_000);
+        appProperties.getSecurity().setLoginWorkers(1);
+        return appProperties;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.service.CardFingerprintBackfill;
+import com.example.bankcards.util.CardNumberEncryptor;
+import com.example.bankcards.util.CardNumberFingerprinter;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardFingerprintBackfillTest {
+
+    private final AppProperties appProperties = properties("fedcba9876543210fedcba9876543210");
+    private final CardNumberEncryptor encryptor = new CardNumberEncryptor(appProperties);
+    private final CardNumberFingerprinter fingerprinter = new CardNumberFingerprinter(appProperties);
+
+    private final List<Map<String, Object>> cards = new ArrayList<>();
+    private final Map<Long, byte[]> fingerprints = new LinkedHashMap<>();
+    // id карт в том порядке, в каком проход их читал
+    private final List<Long> scanned = new ArrayList<>();
+    private long checkpoint;
+    private int batches;
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) {
+            long afterId = (Long) args[0];
+            List<Map<String, Object>> rows = cards.stream()
+                    .filter(card -> (Long) card.get("id") > afterId)
+                    .filter(card -> !fingerprints.containsKey((Long) card.get("id")))
+                    .toList();
+            rows.forEach(row -> scanned.add((Long) row.get("id")));
+            return rows;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            return checkpoint > 0 ? (List<T>) List.of(checkpoint) : List.of();
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            batches++;
+            Set<String> seen = new HashSet<>();
+            for (Object[] row : batchArgs) {
+                if (!seen.add(Arrays.toString((byte[]) row[0]))) {
+                    throw new DuplicateKeyException("uk_cards_card_number_fingerprint");
+                }
+            }
+            batchArgs.forEach(row -> fingerprints.put((Long) row[1], (byte[]) row[0]));
+            return new int[batchArgs.size()];
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.contains("card_fingerprint_checkpoints")) {
+                checkpoint = Math.max(checkpoint, (Long) args[1]);
+                return 1;
+            }
+            for (byte[] existing : fingerprints.values()) {
+                if (Arrays.equals(existing, (byte[]) args[0])) {
+                    throw new DuplicateKeyException("uk_cards_card_number_fingerprint");
+                }
+            }
+            fingerprints.put((Long) args[1], (byte[]) args[0]);
+            return 1;
+        }
+    };
+
+    @Test
+    void testFingerprintIgnoresFormattingAndDependsOnKey() {
+        byte[] plain = fingerprinter.fingerprint("4111111111111111");
+
+        assertEquals(CardNumberFingerprinter.FINGERPRINT_LENGTH, plain.length);
+        assertArrayEquals(plain, fingerprinter.fingerprint("4111 1111 1111 1111"));
+        assertArrayEquals(plain, fingerprinter.fingerprint("4111-1111-1111-1111"));
+        assertFalse(Arrays.equals(plain, fingerprinter.fingerprint("5500000000000004")));
+
+        CardNumberFingerprinter otherKey = new CardNumberFingerprinter(properties("0123456789abcdef0123456789abcdef"));
+        assertFalse(Arrays.equals(plain, otherKey.fingerprint("4111111111111111")));
+    }
+
+    @Test
+    void testBackfillFillsMissingFingerprintsInOneBatch() {
+        card(1L, encryptor.encrypt("4111111111111111"));
+        card(2L, "not-a-ciphertext");
+        card(3L, encryptor.encrypt("5500000000000004"));
+
+        int filled = backfill().backfill();
+
+        assertEquals(2, filled);
+        assertEquals(1, batches);
+        assertArrayEquals(fingerprinter.fingerprint("4111111111111111"), fingerprints.get(1L));
+        assertArrayEquals(fingerprinter.fingerprint("5500000000000004"), fingerprints.get(3L));
+        assertFalse(fingerprints.containsKey(2L));
+        assertEquals(0, backfill().backfill());
+    }
+
+    @Test
+    void testDuplicateNumbersDoNotBlockTheRestOfTheChunk() {
+        card(1L, encryptor.encrypt("4111111111111111"));
+        card(2L, encryptor.encrypt("4111 1111 1111 1111"));
+        card(3L, encryptor.encrypt("5500000000000004"));
+
+        int filled = backfill().backfill();
+
+        assertEquals(2, filled);
+        assertTrue(fingerprints.containsKey(1L));
+        assertFalse(fingerprints.containsKey(2L));
+        assertTrue(fingerprints.containsKey(3L));
+    }
+
+    @Test
+    void testUnfillableRowsAreNotRescanned() {
+        card(1L, "not-a-ciphertext");
+        card(2L, encryptor.encrypt("4111111111111111"));
+        card(3L, encryptor.encrypt("4111 1111 1111 1111"));
+        assertEquals(1, backfill().backfill());
+        assertEquals(List.of(1L, 2L, 3L), scanned);
+        assertEquals(3L, checkpoint);
+
+        // Следующий проход читает только карты, появившиеся после контрольной точки
+        card(4L, encryptor.encrypt("5500000000000004"));
+        scanned.clear();
+        assertEquals(1, backfill().backfill());
+        assertEquals(List.of(4L), scanned);
+        assertFalse(fingerprints.containsKey(1L));
+        assertFalse(fingerprints.containsKey(3L));
+    }
+
+    private void card(Long id, String encrypted) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("card_number_encrypted", encrypted);
+        cards.add(row);
+    }
+
+    private CardFingerprintBackfill backfill() {
+        return new CardFingerprintBackfill(jdbcTemplate, encryptor, fingerprinter, appProperties);
+    }
+
+    private AppProperties properties(String fingerprintKey) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getEncryption().setKey("0123456789abcdef0123456789abcdef");
+        appProperties.getEncryption().setFingerprintKey(fingerprintKey);
+        return appProperties;
+    }
+}
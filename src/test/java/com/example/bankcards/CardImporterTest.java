@@ -0,0 +1,246 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.CardImportErrorDTO;
+import com.example.bankcards.dto.CardImportResultDTO;
+import com.example.bankcards.service.CardImporter;
+import com.example.bankcards.util.CardNumberEncryptor;
+import com.example.bankcards.util.CardNumberFingerprinter;
+import com.example.bankcards.util.CardNumberMasker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardImporterTest {
+
+    private static final String EXPIRY = LocalDate.now().plusYears(2).toString();
+
+    private final AppProperties appProperties = properties();
+    private final CardNumberEncryptor encryptor = new CardNumberEncryptor(appProperties);
+    private final CardNumberFingerprinter fingerprinter = new CardNumberFingerprinter(appProperties);
+
+    private final Set<ByteBuffer> fingerprints = new HashSet<>();
+    private final Set<Long> users = new HashSet<>(Set.of(1L, 2L));
+    // Карты, созданные через API между проверкой и вставкой порции
+    private final Set<ByteBuffer> racing = new HashSet<>();
+    // Владельцы, удалённые между проверкой и вставкой порции
+    private final Set<Long> deletedOwners = new HashSet<>();
+    private final List<Object[]> inserted = new ArrayList<>();
+    private int batches;
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            if (sql.contains("FROM users")) {
+                return (List<T>) List.of(args).stream().filter(users::contains).toList();
+            }
+            return (List<T>) List.of(args).stream()
+                    .filter(arg -> fingerprints.contains(ByteBuffer.wrap((byte[]) arg)))
+                    .toList();
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            batches++;
+            batchArgs.forEach(this::checkConstraints);
+            batchArgs.forEach(this::insert);
+            return new int[batchArgs.size()];
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            checkConstraints(args);
+            insert(args);
+            return 1;
+        }
+
+        // Тексты ошибок MySQL, по которым импорт различает причину отказа
+        private void checkConstraints(Object[] row) {
+            if (racing.contains(ByteBuffer.wrap((byte[]) row[1]))) {
+                throw new DuplicateKeyException("Duplicate entry for key 'cards.uk_cards_card_number_fingerprint'");
+            }
+            if (deletedOwners.contains((Long) row[5])) {
+                throw new DataIntegrityViolationException("Cannot add or update a child row: a foreign key " +
+                        "constraint fails (CONSTRAINT `fk_cards_user` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`))");
+            }
+        }
+
+        private void insert(Object[] row) {
+            fingerprints.add(ByteBuffer.wrap((byte[]) row[1]));
+            inserted.add(row);
+        }
+    };
+
+    @Test
+    void testCsvImportReportsEveryRejectedLine() {
+        fingerprints.add(ByteBuffer.wrap(fingerprinter.fingerprint("5555555555554444")));
+
+        CardImportResultDTO result = importer(2).importCards(CardImporter.Format.CSV, input(
+                "card_number,holder_name,expiry_date,user_id",
+                "4111111111111111,IVAN IVANOV," + EXPIRY + ",1",
+                "4111111111111112,IVAN IVANOV," + EXPIRY + ",1",
+                "5500000000000004,\"PETROV, PETR\"," + EXPIRY + ",2",
+                "",
+                "4012888888881881,ANNA," + LocalDate.now().minusDays(1) + ",1",
+                "4242424242424242,ANNA," + EXPIRY + ",99",
+                "4111 1111 1111 1111,IVAN IVANOV," + EXPIRY + ",1",
+                "5555555555554444,MARIA," + EXPIRY + ",2",
+                "4000056655665556,MARIA,31-12-2030,2",
+                "4000056655665556,M," + EXPIRY + ",2",
+                "4000056655665556,MARIA," + EXPIRY));
+
+        assertEquals(10, result.getTotal());
+        assertEquals(2, result.getImported());
+        assertEquals(8, result.getFailed());
+        assertEquals(List.of(3, 6, 7, 8, 9, 10, 11, 12),
+                result.getErrors().stream().map(CardImportErrorDTO::getLine).toList());
+        assertEquals(List.of("INVALID_CARD_NUMBER", "EXPIRED", "USER_NOT_FOUND", "CARD_EXISTS", "CARD_EXISTS",
+                        "INVALID_EXPIRY_DATE", "INVALID_HOLDER_NAME", "PARSE_ERROR"),
+                result.getErrors().stream().map(CardImportErrorDTO::getErrorCode).toList());
+
+        Object[] petrov = inserted.get(1);
+        assertEquals("**** **** **** 0004", petrov[2]);
+        assertEquals("PETROV, PETR", petrov[3]);
+        assertEquals("5500000000000004", encryptor.decrypt((String) petrov[0]));
+        assertTrue(((String) petrov[0]).startsWith("v1:"));
+    }
+
+    @Test
+    void testDuplicatesWithinChunkAreCaughtInMemory() {
+        CardImportResultDTO result = importer(100).importCards(CardImporter.Format.CSV, input(
+                "4111111111111111,IVAN IVANOV," + EXPIRY + ",1",
+                "4111-1111-1111-1111,IVAN IVANOV," + EXPIRY + ",1",
+                "5500000000000004,PETR PETROV," + EXPIRY + ",2"));
+
+        assertEquals(2, result.getImported());
+        CardImportErrorDTO duplicate = result.getErrors().get(0);
+        assertEquals(2, duplicate.getLine());
+        assertEquals("DUPLICATE_IN_FILE", duplicate.getErrorCode());
+        assertTrue(duplicate.getMessage().contains("1"));
+        assertEquals(1, batches);
+    }
+
+    @Test
+    void testNdjsonImport() {
+        CardImportResultDTO result = importer(100).importCards(CardImporter.Format.NDJSON, input(
+                "{\"cardNumber\":\"4111111111111111\",\"holderName\":\"IVAN IVANOV\",\"expiryDate\":\"" + EXPIRY + "\",\"userId\":1}",
+                "{\"cardNumber\":\"5500000000000004\",\"holderName\":\"PETR PETROV\"",
+                "{\"cardNumber\":\"5500000000000004\",\"holderName\":\"PETR PETROV\",\"expiryDate\":\"" + EXPIRY + "\"}"));
+
+        assertEquals(3, result.getTotal());
+        assertEquals(1, result.getImported());
+        assertEquals(List.of("PARSE_ERROR", "INVALID_USER_ID"),
+                result.getErrors().stream().map(CardImportErrorDTO::getErrorCode).toList());
+    }
+
+    @Test
+    void testConflictingBatchFallsBackToSingleRows() {
+        racing.add(ByteBuffer.wrap(fingerprinter.fingerprint("5500000000000004")));
+
+        CardImportResultDTO result = importer(100).importCards(CardImporter.Format.CSV, input(
+                "4111111111111111,IVAN IVANOV," + EXPIRY + ",1",
+                "5500000000000004,PETR PETROV," + EXPIRY + ",2",
+                "4242424242424242,ANNA PETROVA," + EXPIRY + ",2"));
+
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals("CARD_EXISTS", result.getErrors().get(0).getErrorCode());
+        assertEquals(2, result.getErrors().get(0).getLine());
+        assertEquals(Set.of("4111111111111111", "4242424242424242"), inserted.stream()
+                .map(row -> encryptor.decrypt((String) row[0]))
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testOwnerDeletedDuringImportIsReportedAsMissingUser() {
+        deletedOwners.add(2L);
+
+        CardImportResultDTO result = importer(100).importCards(CardImporter.Format.CSV, input(
+                "4111111111111111,IVAN IVANOV," + EXPIRY + ",1",
+                "5500000000000004,PETR PETROV," + EXPIRY + ",2"));
+
+        assertEquals(1, result.getImported());
+        CardImportErrorDTO error = result.getErrors().get(0);
+        assertEquals(2, error.getLine());
+        assertEquals("USER_NOT_FOUND", error.getErrorCode());
+        assertEquals("Пользователь не найден с id: 2", error.getMessage());
+    }
+
+    @Test
+    void testSeparatorsAreStrippedBeforeEncryption() {
+        CardImportResultDTO result = importer(100).importCards(CardImporter.Format.CSV, input(
+                "4111-1111-1111-1111,IVAN IVANOV," + EXPIRY + ",1",
+                "\"5500 0000 0000 0004\",PETR PETROV," + EXPIRY + ",2"));
+
+        assertEquals(2, result.getImported());
+        // Сохранённый номер совпадает с тем, что принимает API: 16 цифр без разделителей
+        assertEquals(Set.of("4111111111111111", "5500000000000004"), inserted.stream()
+                .map(row -> encryptor.decrypt((String) row[0]))
+                .collect(Collectors.toSet()));
+        assertArrayEquals(fingerprinter.fingerprint("4111111111111111"), (byte[]) inserted.get(0)[1]);
+    }
+
+    @Test
+    void testUnknownFormatIsRejected() {
+        assertEquals(CardImporter.Format.NDJSON, CardImporter.Format.of("ndjson"));
+        assertThrows(IllegalArgumentException.class, () -> CardImporter.Format.of("xlsx"));
+    }
+
+    private CardImporter importer(int chunkSize) {
+        appProperties.getCards().setImportChunkSize(chunkSize);
+        appProperties.getCards().setImportThreads(3);
+        return new CardImporter(jdbcTemplate, transactionManager(), new ObjectMapper(), new CardNumberMasker(),
+                fingerprinter, encryptor, appProperties);
+    }
+
+    private ByteArrayInputStream input(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return (TransactionStatus) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{TransactionStatus.class}, (proxy, method, args) ->
+                                method.getReturnType() == boolean.class ? false : null);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+
+    private AppProperties properties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getEncryption().setKey("0123456789abcdef0123456789abcdef");
+        appProperties.getEncryption().getKeys().put("v1", "abcdef0123456789abcdef0123456789");
+        appProperties.getEncryption().setActiveKeyId("v1");
+        appProperties.getEncryption().setFingerprintKey("fedcba9876543210fedcba9876543210");
+        return appProperties;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.util.CardNumberEncryptor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardNumberEncryptorTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardNumberEncryptorTest.class);
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef";
+
+    private final CardNumberEncryptor encryptor = new CardNumberEncryptor(properties());
+
+    @Test
+    void testCiphertextIsCompatibleWithStoredCards() throws Exception {
+        String encrypted = encryptor.encrypt("4111111111111111");
+
+        assertEquals(legacyEncrypt("4111111111111111"), encrypted);
+        assertEquals("4111111111111111", encryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void testVersionedKeysArePrefixedAndDecryptedByKeyId() {
+        String legacy = encryptor.encrypt("4111111111111111");
+        CardNumberEncryptor v1 = new CardNumberEncryptor(versioned("v1"));
+        CardNumberEncryptor v2 = new CardNumberEncryptor(versioned("v2"));
+
+        String underV1 = v1.encrypt("4111111111111111");
+        String underV2 = v2.encrypt("4111111111111111");
+
+        assertTrue(underV1.startsWith("v1:"));
+        assertTrue(underV2.startsWith("v2:"));
+        assertEquals("4111111111111111", v2.decrypt(legacy));
+        assertEquals("4111111111111111", v2.decrypt(underV1));
+        assertEquals("4111111111111111", v1.decrypt(underV2));
+        assertEquals(List.of("4111111111111111", "4111111111111111", "4111111111111111"),
+                v2.decryptAll(List.of(legacy, underV1, underV2)));
+
+        assertFalse(v2.isEncryptedWithActiveKey(legacy));
+        assertFalse(v2.isEncryptedWithActiveKey(underV1));
+        assertTrue(v2.isEncryptedWithActiveKey(underV2));
+        assertEquals(underV2, v2.reencrypt(underV1));
+
+        assertThrows(RuntimeException.class, () -> v2.decrypt("v9:" + underV2.substring(3)));
+    }
+
+    @Test
+    void testBulkMatchesSingleCalls() {
+        List<String> numbers = List.of("4111111111111111", "5500000000000004", "4111 1111 1111 1111");
+
+        List<String> encrypted = encryptor.encryptAll(numbers);
+
+        assertEquals(numbers.size(), encrypted.size());
+        for (int i = 0; i < numbers.size(); i++) {
+            assertEquals(encryptor.encrypt(numbers.get(i)), encrypted.get(i));
+        }
+        assertEquals(numbers, encryptor.decryptAll(encrypted));
+    }
+
+    @Test
+    void testFailedDecryptionDoesNotBreakLaterCalls() {
+        String encrypted = encryptor.encrypt("4111111111111111");
+
+        assertThrows(RuntimeException.class, () -> encryptor.decrypt("not-a-ciphertext"));
+        assertThrows(RuntimeException.class, () -> encryptor.decrypt(Base64.getEncoder().encodeToString(new byte[16])));
+
+        assertEquals("4111111111111111", encryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void testConcurrentCallsShareCiphersSafely() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+            String number = String.format("4111%012d", t);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    if (!number.equals(encryptor.decrypt(encryptor.encrypt(number)))) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+        executor.shutdown();
+    }
+
+    // Замер: mvn test -Dbench=true -Dtest=CardNumberEncryptorTest
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void testComparePooledCiphersWithGetInstancePerCall() throws Exception {
+        int iterations = 200_000;
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            numbers.add(String.format("4111%012d", i));
+        }
+
+        // Прогрев JIT для всех вариантов
+        for (int i = 0; i < iterations / 10; i++) {
+            legacyEncrypt(numbers.get(i % numbers.size()));
+            encryptor.encrypt(numbers.get(i % numbers.size()));
+        }
+        encryptor.encryptAll(numbers);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            legacyEncrypt(numbers.get(i % numbers.size()));
+        }
+        double legacy = (System.nanoTime() - started) / (double) iterations;
+
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            encryptor.encrypt(numbers.get(i % numbers.size()));
+        }
+        double pooled = (System.nanoTime() - started) / (double) iterations;
+
+        started = System.nanoTime();
+        for (int i = 0; i < iterations / numbers.size(); i++) {
+            encryptor.encryptAll(numbers);
+        }
+        double bulk = (System.nanoTime() - started) / (double) iterations;
+
+        // Порядок вариантов по времени на общих CI-агентах не гарантирован: результат смотрят в логе
+        logger.info("getInstance per call: {} ns, pooled: {} ns, bulk: {} ns per card",
+                Math.round(legacy), Math.round(pooled), Math.round(bulk));
+    }
+
+    // Прежняя реализация: поиск провайдера и init на каждый вызов
+    private String legacyEncrypt(String data) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "AES"));
+        return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private AppProperties versioned(String activeKeyId) {
+        AppProperties appProperties = properties();
+        appProperties.getEncryption().getKeys().put("v1", "v1v1v1v1v1v1v1v1v1v1v1v1v1v1v1v1");
+        appProperties.getEncryption().getKeys().put("v2", "v2v2v2v2v2v2v2v2v2v2v2v2v2v2v2v2");
+        appProperties.getEncryption().setActiveKeyId(activeKeyId);
+        return appProperties;
+    }
+
+    private AppProperties properties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getEncryption().setKey(KEY);
+        return appProperties;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.bankcards;
+
+import com.example.bankcards.util.CardNumberMasker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.CharBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardNumberMaskerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardNumberMaskerTest.class);
+
+    private final CardNumberMasker masker = new CardNumberMasker();
+
+    @Test
+    void testMask() {
+        assertEquals("**** **** **** 1111", masker.mask("4111111111111111"));
+        assertEquals("**** **** **** 1234", masker.mask("4111-1111 1111 1234"));
+        assertEquals("**** **** **** 5678", masker.mask("12345678"));
+        assertEquals("12a", masker.mask("12a"));
+        assertEquals("", masker.mask("   "));
+        assertEquals("", masker.mask(null));
+    }
+
+    @Test
+    void testMaskWithPattern() {
+        assertEquals("****-****-****-1111", masker.maskWithPattern("4111 1111 1111 1111", "####-####-####-####"));
+        assertEquals("**34 56", masker.maskWithPattern("123456", "#### ##"));
+        assertEquals("1234", masker.maskWithPattern("1234", "#######"));
+        assertEquals("", masker.maskWithPattern(" ", "####"));
+    }
+
+    @Test
+    void testLuhnValidation() {
+        assertTrue(masker.isValidCardNumber("4111111111111111"));
+        assertTrue(masker.isValidCardNumber("4111 1111 1111 1111"));
+        assertTrue(masker.isValidCardNumber("5500-0000-0000-0004"));
+        assertFalse(masker.isValidCardNumber("4111111111111112"));
+        assertFalse(masker.isValidCardNumber("411111111111111"));
+        assertFalse(masker.isValidCardNumber("41111111111111110"));
+        assertFalse(masker.isValidCardNumber(null));
+        // Только ASCII-цифры, как и прежде
+        assertFalse(masker.isValidCardNumber("411111111111111١"));
+    }
+
+    @Test
+    void testMaskIfValidWorksOnCharSequences() {
+        CharBuffer line = CharBuffer.wrap("7,4111 1111 1111 1111,IVAN".toCharArray());
+
+        assertEquals("**** **** **** 1111", masker.maskIfValid(line.subSequence(2, 21)));
+        assertNull(masker.maskIfValid("4111111111111112"));
+        assertNull(masker.maskIfValid(null));
+    }
+
+    // Замер: mvn test -Dbench=true -Dtest=CardNumberMaskerTest
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void testCompareCharScanningWithRegexImplementation() {
+        String[] numbers = new String[1_000];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = String.format("4111 %04d %04d 1111", i, i * 7 % 10_000);
+        }
+        int iterations = 1_000_000;
+        int sink = 0;
+
+        // Прогрев JIT для обоих вариантов
+        for (int i = 0; i < iterations / 10; i++) {
+            sink += legacyValidateAndMask(numbers[i % numbers.length]).length();
+            String masked = masker.maskIfValid(numbers[i % numbers.length]);
+            sink += masked != null ? masked.length() : 0;
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += legacyValidateAndMask(numbers[i % numbers.length]).length();
+        }
+        double legacy = (System.nanoTime() - started) / (double) iterations;
+
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String masked = masker.maskIfValid(numbers[i % numbers.length]);
+            sink += masked != null ? masked.length() : 0;
+        }
+        double scanning = (System.nanoTime() - started) / (double) iterations;
+
+        // sink выводится, чтобы JIT не выбросил циклы; сами замеры не проверяются, они зависят от машины
+        logger.info("regex: {} ns/card, char scan: {} ns/card ({})", Math.round(legacy), Math.round(scanning), sink);
+    }
+
+    // Прежний путь создания карты: replaceAll дважды, Character.getNumericValue и String.format
+    private String legacyValidateAndMask(String cardNumber) {
+        String cleanNumber = cardNumber.replaceAll("[^\\d]", "");
+        boolean valid = false;
+        if (cleanNumber.length() == 16) {
+            int sum = 0;
+            boolean alternate = false;
+            for (int i = cleanNumber.length() - 1; i >= 0; i--) {
+                int digit = Character.getNumericValue(cleanNumber.charAt(i));
+                if (alternate) {
+                    digit *= 2;
+                    if (digit > 9) {
+                        digit = (digit % 10) + 1;
+                    }
+                }
+                sum += digit;
+                alternate = !alternate;
+            }
+            valid = sum % 10 == 0;
+        }
+        String digits = cardNumber.replaceAll("[^\\d]", "");
+        return valid ? String.format("**** **** **** %s", digits.substring(digits.length() - 4)) : "";
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.service.CardReencryptionJob;
+import com.example.bankcards.util.CardNumberEncryptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardReencryptionJobTest {
+
+    private final CardNumberEncryptor legacy = new CardNumberEncryptor(properties(null, 3));
+    private final CardNumberEncryptor rotated = new CardNumberEncryptor(properties("v2", 3));
+
+    private final Map<Long, String> cards = new TreeMap<>();
+    private final Map<String, Long> checkpoints = new TreeMap<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) {
+            long afterId = (Long) args[0];
+            int limit = (Integer) args[1];
+            return cards.entrySet().stream()
+                    .filter(card -> card.getKey() > afterId)
+                    .limit(limit)
+                    .map(card -> Map.<String, Object>of("id", card.getKey(), "card_number_encrypted", card.getValue()))
+                    .toList();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            Long checkpoint = checkpoints.get((String) args[0]);
+            return checkpoint != null ? List.of((T) checkpoint) : List.of();
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            batchSizes.add(batchArgs.size());
+            for (Object[] row : batchArgs) {
+                cards.replace((Long) row[1], (String) row[2], (String) row[0]);
+            }
+            return new int[batchArgs.size()];
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            checkpoints.merge((String) args[0], (Long) args[1], Math::max);
+            return 1;
+        }
+    };
+
+    @Test
+    void testReencryptsStaleRowsInChunksAndSavesCheckpoint() {
+        for (long id = 1; id <= 7; id++) {
+            cards.put(id, legacy.encrypt(String.format("4111%012d", id)));
+        }
+        cards.put(8L, rotated.encrypt("5500000000000004"));
+
+        int reencrypted = job(rotated).run();
+
+        assertEquals(7, reencrypted);
+        assertEquals(List.of(3, 3, 1), batchSizes);
+        assertEquals(Long.valueOf(8), checkpoints.get("v2"));
+        cards.forEach((id, encrypted) -> assertTrue(encrypted.startsWith("v2:")));
+        assertEquals("4111000000000005", rotated.decrypt(cards.get(5L)));
+    }
+
+    @Test
+    void testResumesFromCheckpointAndSkipsUndecryptableRows() {
+        cards.put(1L, legacy.encrypt("4111000000000001"));
+        cards.put(2L, "not-a-ciphertext");
+        cards.put(3L, legacy.encrypt("4111000000000003"));
+        checkpoints.put("v2", 1L);
+
+        int reencrypted = job(rotated).run();
+
+        assertEquals(1, reencrypted);
+        assertFalse(cards.get(1L).startsWith("v2:"));
+        assertEquals("not-a-ciphertext", cards.get(2L));
+        assertTrue(cards.get(3L).startsWith("v2:"));
+        assertEquals(Long.valueOf(3), checkpoints.get("v2"));
+
+        // Повторный проход начинается с контрольной точки и ничего не делает
+        assertEquals(0, job(rotated).run());
+    }
+
+    @Test
+    void testNothingToDoWithoutVersionedKeys() {
+        cards.put(1L, legacy.encrypt("4111000000000001"));
+
+        assertEquals(0, job(legacy).run());
+        assertTrue(checkpoints.isEmpty());
+    }
+
+    private CardReencryptionJob job(CardNumberEncryptor encryptor) {
+        return new CardReencryptionJob(jdbcTemplate, encryptor, properties("v2", 3));
+    }
+
+    private AppProperties properties(String activeKeyId, int chunkSize) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getEncryption().setKey("0123456789abcdef0123456789abcdef");
+        if (activeKeyId != null) {
+            appProperties.getEncryption().getKeys().put(activeKeyId, "v2v2v2v2v2v2v2v2v2v2v2v2v2v2v2v2");
+            appProperties.getEncryption().setActiveKeyId(activeKeyId);
+        }
+        appProperties.getEncryption().setReencryptChunkSize(chunkSize);
+        appProperties.getEncryption().setReencryptRowsPerSecond(1_000_000);
+        return appProperties;
+    }
+}
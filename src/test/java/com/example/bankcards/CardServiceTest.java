@@ -0,0 +1,87 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.CardCreateDTO;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.service.CardService;
+import com.example.bankcards.util.CardNumberEncryptor;
+import com.example.bankcards.util.CardNumberFingerprinter;
+import com.example.bankcards.util.CardNumberMasker;
+import com.example.bankcards.util.SecurityUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardServiceTest {
+
+    private final AppProperties appProperties = properties();
+
+    @Test
+    void testConcurrentDuplicateIsReportedAsExistingCard() {
+        CardService cardService = cardService(new DuplicateKeyException(
+                "Duplicate entry 'x' for key 'cards.uk_cards_card_number_fingerprint'"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> cardService.createCard(request(), null));
+        assertEquals("Карта с таким номером уже существует", e.getMessage());
+    }
+
+    @Test
+    void testOtherViolationsAreNotReportedAsDuplicates() {
+        DataIntegrityViolationException ownerDeleted = new DataIntegrityViolationException(
+                "Cannot add or update a child row: a foreign key constraint fails " +
+                        "(CONSTRAINT `fk_cards_user` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`))");
+        CardService cardService = cardService(ownerDeleted);
+
+        assertSame(ownerDeleted, assertThrows(DataIntegrityViolationException.class,
+                () -> cardService.createCard(request(), null)));
+    }
+
+    private CardCreateDTO request() {
+        CardCreateDTO request = new CardCreateDTO();
+        request.setCardNumber("4111111111111111");
+        request.setHolderName("IVAN IVANOV");
+        request.setExpiryDate(LocalDate.now().plusYears(2));
+        return request;
+    }
+
+    // Проверка существования проходит, а вставка падает: гонка с другим запросом
+    private CardService cardService(DataIntegrityViolationException onSave) {
+        CardRepository cardRepository = (CardRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "existsByCardNumberFingerprint":
+                            return false;
+                        case "save":
+                            throw onSave;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        SecurityUtils securityUtils = new SecurityUtils(null) {
+            @Override
+            public User getCurrentUser() {
+                User user = new User("user@bank.com", "secret");
+                user.setId(1L);
+                return user;
+            }
+        };
+        return new CardService(cardRepository, new CardNumberEncryptor(appProperties),
+                new CardNumberFingerprinter(appProperties), new CardNumberMasker(), securityUtils, null);
+    }
+
+    private AppProperties properties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getEncryption().setKey("0123456789abcdef0123456789abcdef");
+        appProperties.getEncryption().getKeys().put("v1", "abcdef0123456789abcdef0123456789");
+        appProperties.getEncryption().setActiveKeyId("v1");
+        appProperties.getEncryption().setFingerprintKey("fedcba9876543210fedcba9876543210");
+        return appProperties;
+    }
+}
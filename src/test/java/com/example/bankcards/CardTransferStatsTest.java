@@ -0,0 +1,149 @@
+package com.example.bankcards;
+
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardTransferStats;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardTransferStatsRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardTransferStatsService;
+import com.example.bankcards.service.TransferProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+@SpringBootTest
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class CardTransferStatsTest {
+
+    private static final long USER_ID = 2L;
+
+    @Autowired
+    private CardTransferStatsService cardTransferStatsService;
+
+    @Autowired
+    private CardTransferStatsRepository cardTransferStatsRepository;
+
+    @Autowired
+    private TransferProcessor transferProcessor;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Card first;
+    private Card second;
+
+    @BeforeEach
+    void createCards() {
+        first = card(0);
+        second = card(1);
+    }
+
+    @AfterEach
+    void dropCards() {
+        for (Card card : new Card[]{first, second}) {
+            jdbcTemplate.update("DELETE FROM transfers WHERE from_card_id = ? OR to_card_id = ?",
+                    card.getId(), card.getId());
+            jdbcTemplate.update("DELETE FROM card_transfer_stats WHERE card_id = ?", card.getId());
+            jdbcTemplate.update("DELETE FROM cards WHERE id = ?", card.getId());
+        }
+    }
+
+    @Test
+    void testAddActivityAccumulatesTotalsAndWidensTimeRange() {
+        LocalDateTime noon = LocalDateTime.of(2024, 5, 1, 12, 0);
+        addActivity(first.getId(), "10.00", 1, "0", 0, noon, noon);
+        addActivity(first.getId(), "0", 0, "4.00", 2, noon.minusHours(1), noon.minusHours(1));
+        addActivity(first.getId(), "2.50", 1, "0", 0, noon.plusHours(1), noon.plusHours(1));
+
+        CardTransferStats stats = cardTransferStatsRepository.findById(first.getId()).orElseThrow();
+        assertEquals(0, new BigDecimal("12.50").compareTo(stats.getTotalSent()));
+        assertEquals(2, stats.getSentCount());
+        assertEquals(0, new BigDecimal("4.00").compareTo(stats.getTotalReceived()));
+        assertEquals(2, stats.getReceivedCount());
+        assertEquals(noon.minusHours(1), stats.getFirstTransferAt());
+        assertEquals(noon.plusHours(1), stats.getLastTransferAt());
+    }
+
+    @Test
+    void testRebuildRestoresCorruptedStats() {
+        transferProcessor.execute(USER_ID, request(first, second, "10.00"));
+        transferProcessor.execute(USER_ID, request(second, first, "4.00"));
+        CardTransferStats expected = cardTransferStatsRepository.findById(first.getId()).orElseThrow();
+
+        jdbcTemplate.update("UPDATE card_transfer_stats SET total_sent = 999, sent_count = 99, " +
+                "first_transfer_at = NULL WHERE card_id = ?", first.getId());
+        jdbcTemplate.update("DELETE FROM card_transfer_stats WHERE card_id = ?", second.getId());
+        cardTransferStatsService.rebuild();
+
+        CardTransferStats rebuilt = cardTransferStatsRepository.findById(first.getId()).orElseThrow();
+        assertEquals(0, expected.getTotalSent().compareTo(rebuilt.getTotalSent()));
+        assertEquals(expected.getSentCount(), rebuilt.getSentCount());
+        assertEquals(0, expected.getTotalReceived().compareTo(rebuilt.getTotalReceived()));
+        assertEquals(expected.getReceivedCount(), rebuilt.getReceivedCount());
+        assertEquals(expected.getFirstTransferAt(), rebuilt.getFirstTransferAt());
+        assertEquals(expected.getLastTransferAt(), rebuilt.getLastTransferAt());
+        assertTrue(cardTransferStatsRepository.findById(second.getId()).isPresent());
+        assertFalse(cardTransferStatsService.findInconsistentCards().contains(first.getId()));
+    }
+
+    @Test
+    void testCheckerReportsTimestampMismatches() {
+        transferProcessor.execute(USER_ID, request(first, second, "10.00"));
+        assertFalse(cardTransferStatsService.findInconsistentCards().contains(first.getId()));
+
+        // Суммы и счётчики верны, расходится только время последнего перевода
+        jdbcTemplate.update("UPDATE card_transfer_stats SET last_transfer_at = last_transfer_at + INTERVAL 1 DAY " +
+                "WHERE card_id = ?", first.getId());
+        // NULL вместо времени первого перевода тоже расхождение
+        jdbcTemplate.update("UPDATE card_transfer_stats SET first_transfer_at = NULL WHERE card_id = ?",
+                second.getId());
+
+        assertTrue(cardTransferStatsService.findInconsistentCards().contains(first.getId()));
+        assertTrue(cardTransferStatsService.findInconsistentCards().contains(second.getId()));
+    }
+
+    private void addActivity(Long cardId, String sent, long sentCount, String received, long receivedCount,
+                             LocalDateTime firstAt, LocalDateTime lastAt) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                cardTransferStatsRepository.addActivity(cardId, new BigDecimal(sent), sentCount,
+                        new BigDecimal(received), receivedCount, firstAt, lastAt));
+    }
+
+    private Card card(int index) {
+        Card card = new Card("stats-" + System.nanoTime() + "-" + index, "**** **** **** 000" + index, "STATS",
+                LocalDate.now().plusYears(2), userRepository.getReferenceById(USER_ID));
+        card.setBalance(new BigDecimal("1000.00"));
+        return cardRepository.save(card);
+    }
+
+    private TransferRequestDTO request(Card from, Card to, String amount) {
+        TransferRequestDTO request = new TransferRequestDTO();
+        request.setFromCardId(from.getId());
+        request.setToCardId(to.getId());
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+}
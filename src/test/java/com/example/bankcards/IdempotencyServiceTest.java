@@ -0,0 +1,211 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.IdempotencyKeyReusedException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.TransferProcessor;
+import com.example.bankcards.service.TransferService;
+import com.example.bankcards.util.SecurityUtils;
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyServiceTest {
+
+    private static final Long USER_ID = 7L;
+    private static final Instant NOW = Instant.parse("2024-05-01T12:00:00Z");
+
+    private final AppProperties appProperties = new AppProperties();
+    private final Map<String, IdempotencyKey> storedKeys = new HashMap<>();
+    private final AtomicInteger dtoQueries = new AtomicInteger();
+    private final AtomicInteger executed = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+    private LocalDateTime purgeThreshold;
+    // Параллельный запрос с тем же ключом, закоммиченный раньше нашего
+    private TransferRequestDTO concurrentRequest;
+
+    private final IdempotencyService idempotencyService = new IdempotencyService(
+            keyRepository(), transferRepository(), appProperties, new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            }, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    private final TransferService transferService = new TransferService(transferRepository(), null,
+            securityUtils(), transferProcessor(), idempotencyService, null, null, null);
+
+    @Test
+    void testReplayReturnsOriginalResponseFromMemory() {
+        TransferDTO first = transferService.createTransfer(request("10.00"), "key-1");
+        assertEquals(0, dtoQueries.get(), "Ответ собирается из загруженных карт без повторного чтения");
+        assertEquals("**** **** **** 0001", first.getFromCardMasked());
+
+        TransferDTO replay = transferService.createTransfer(request("10"), "key-1");
+
+        assertSame(first, replay);
+        assertEquals(1, executed.get());
+        assertEquals(0, dtoQueries.get(), "Повтор из кэша не должен читать перевод из БД");
+    }
+
+    @Test
+    void testReplayAfterRestartIsServedFromTable() {
+        transferService.createTransfer(request("10.00"), "key-1");
+        TransferService restarted = new TransferService(transferRepository(), null, securityUtils(),
+                transferProcessor(), new IdempotencyService(keyRepository(), transferRepository(), appProperties),
+                null, null, null);
+
+        TransferDTO replay = restarted.createTransfer(request("10.00"), "key-1");
+
+        assertEquals(1L, replay.getId());
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    void testKeyReusedWithDifferentBodyIsRejected() {
+        transferService.createTransfer(request("10.00"), "key-1");
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> transferService.createTransfer(request("11.00"), "key-1"));
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> transferService.createTransferAsync(request("10.00"), "key-1"));
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    void testConcurrentDuplicateReturnsWinningTransfer() {
+        concurrentRequest = request("10.00");
+
+        TransferDTO response = transferService.createTransfer(request("10.00"), "key-1");
+
+        assertEquals(42L, response.getId());
+        assertEquals(0, executed.get());
+    }
+
+    @Test
+    void testConcurrentDuplicateWithDifferentBodyIsRejected() {
+        concurrentRequest = request("99.00");
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> transferService.createTransfer(request("10.00"), "key-1"));
+    }
+
+    @Test
+    void testExpiredKeysArePurgedAndForgotten() {
+        transferService.createTransfer(request("10.00"), "key-1");
+
+        idempotencyService.purgeExpiredKeys();
+        assertEquals(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusHours(24), purgeThreshold);
+
+        // После TTL запись пропала из таблицы и из кэша: тот же ключ создаёт новый перевод
+        storedKeys.clear();
+        nanos.addAndGet(Duration.ofHours(24).plusSeconds(1).toNanos());
+        TransferDTO second = transferService.createTransfer(request("10.00"), "key-1");
+
+        assertEquals(2, executed.get());
+        assertEquals(2L, second.getId());
+    }
+
+    private TransferRequestDTO request(String amount) {
+        TransferRequestDTO request = new TransferRequestDTO();
+        request.setFromCardId(1L);
+        request.setToCardId(2L);
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+
+    private TransferProcessor transferProcessor() {
+        return new TransferProcessor(null, null, null, null, appProperties) {
+            @Override
+            public Transfer execute(Long userId, TransferRequestDTO requestDTO, Consumer<Transfer> afterSave) {
+                if (concurrentRequest != null) {
+                    storedKeys.put("key-1", new IdempotencyKey(userId, "key-1", 42L,
+                            idempotencyService.requestHash(concurrentRequest, false)));
+                    throw new DataIntegrityViolationException("Duplicate entry for uk_idempotency_keys_user_key");
+                }
+                Transfer transfer = new Transfer(card(requestDTO.getFromCardId()), card(requestDTO.getToCardId()),
+                        requestDTO.getAmount(), requestDTO.getDescription());
+                transfer.setId((long) executed.incrementAndGet());
+                afterSave.accept(transfer);
+                return transfer;
+            }
+        };
+    }
+
+    private Card card(Long id) {
+        User owner = new User("user@bank.com", "secret");
+        owner.setId(USER_ID);
+        Card card = new Card("enc" + id, "**** **** **** 000" + id, "OWNER", LocalDate.now().plusYears(3), owner);
+        card.setId(id);
+        return card;
+    }
+
+    private SecurityUtils securityUtils() {
+        return new SecurityUtils(null) {
+            @Override
+            public Long getCurrentUserId() {
+                return USER_ID;
+            }
+        };
+    }
+
+    private IdempotencyKeyRepository keyRepository() {
+        return (IdempotencyKeyRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{IdempotencyKeyRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findByUserIdAndIdempotencyKey":
+                            return Optional.ofNullable(storedKeys.get((String) args[1]));
+                        case "save": {
+                            IdempotencyKey key = (IdempotencyKey) args[0];
+                            if (storedKeys.putIfAbsent(key.getIdempotencyKey(), key) != null) {
+                                throw new DataIntegrityViolationException("uk_idempotency_keys_user_key");
+                            }
+                            return key;
+                        }
+                        case "deleteCreatedBefore":
+                            purgeThreshold = (LocalDateTime) args[0];
+                            return 0;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private TransferRepository transferRepository() {
+        return (TransferRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findDtoById")) {
+                        dtoQueries.incrementAndGet();
+                        Long id = (Long) args[0];
+                        return Optional.of(new TransferDTO(id, 1L, "**** **** **** 0001", 2L, "**** **** **** 0002",
+                                BigDecimal.TEN, null, "COMPLETED", null, LocalDateTime.now()));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.TokenRevocationRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthenticatedUser;
+import com.example.bankcards.security.JwtAuthenticationFilter;
+import com.example.bankcards.security.JwtService;
+import com.example.bankcards.security.TokenDenylist;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String SECRET = "mySuperSecretKeyForBankCardsApplication2024WithSpringBoot3AndJWT";
+
+    private final AppProperties appProperties = appProperties();
+    private final JwtService jwtService = new JwtService(appProperties);
+    private final TokenDenylist tokenDenylist = tokenDenylist();
+    private final List<String> loadedUsers = new ArrayList<>();
+    private final User storedUser = user();
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testTokenWithUserIdAuthenticatesFromClaims() throws Exception {
+        Authentication authentication = filter(jwtService.generateToken(storedUser));
+
+        assertNotNull(authentication);
+        assertEquals(new AuthenticatedUser(7L, "user@bank.com"), authentication.getPrincipal());
+        assertEquals(List.of("ROLE_USER"), authorities(authentication));
+        // Claims-путь не обращается к UserDetailsService
+        assertTrue(loadedUsers.isEmpty());
+    }
+
+    @Test
+    void testRevokedTokenIsNotAuthenticated() throws Exception {
+        String token = jwtService.generateToken(storedUser);
+        // Отзыв в ту же секунду, что и выдача токена
+        tokenDenylist.revoke(7L, LocalDateTime.now());
+
+        assertNull(filter(token));
+        assertTrue(loadedUsers.isEmpty());
+    }
+
+    @Test
+    void testLegacyTokenOfEnabledUserIsLoadedFromDatabase() throws Exception {
+        Authentication authentication = filter(legacyToken());
+
+        assertNotNull(authentication);
+        assertSame(storedUser, authentication.getPrincipal());
+        assertEquals(List.of("user@bank.com"), loadedUsers);
+    }
+
+    @Test
+    void testLegacyTokenOfDisabledUserIsRejected() throws Exception {
+        storedUser.setEnabled(false);
+
+        assertNull(filter(legacyToken()));
+        assertEquals(List.of("user@bank.com"), loadedUsers);
+    }
+
+    private Authentication filter(String token) throws Exception {
+        UserDetailsService userDetailsService = email -> {
+            loadedUsers.add(email);
+            return storedUser;
+        };
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/cards");
+        request.addHeader("Authorization", "Bearer " + token);
+
+        new JwtAuthenticationFilter(jwtService, userDetailsService, tokenDenylist)
+                .doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private List<String> authorities(Authentication authentication) {
+        return authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+    }
+
+    // Токен, выданный до появления claim uid
+    private String legacyToken() {
+        Date now = new Date();
+        return Jwts.builder()
+                .setSubject("user@bank.com")
+                .claim("role", "ROLE_USER")
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                .compact();
+    }
+
+    private User user() {
+        User user = new User("user@bank.com", "secret");
+        user.setId(7L);
+        return user;
+    }
+
+    private TokenDenylist tokenDenylist() {
+        return new TokenDenylist(unsupported(UserRepository.class), unsupported(TokenRevocationRepository.class),
+                appProperties);
+    }
+
+    private <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    private AppProperties appProperties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().getJwt().setSecret(SECRET);
+        appProperties.getSecurity().getJwt().setExpiration(60_000);
+        return appProperties;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.security.JwtClaims;
+import com.example.bankcards.security.JwtService;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtServiceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtServiceTest.class);
+
+    private static final String SECRET = "mySuperSecretKeyForBankCardsApplication2024WithSpringBoot3AndJWT";
+    private static final String OTHER_SECRET = "anotherSecretKeyForBankCardsApplication2024WithSpringBoot3AndJWT";
+
+    @Test
+    void testParseReturnsClaims() {
+        JwtService jwtService = jwtService(SECRET, 60_000);
+        String token = jwtService.generateToken(user());
+
+        JwtClaims claims = jwtService.parse(token).orElseThrow();
+
+        assertEquals("user@bank.com", claims.subject());
+        assertEquals(Long.valueOf(7), claims.userId());
+        assertEquals(List.of("ROLE_USER"), claims.roles());
+        assertEquals("ROLE_USER", claims.role());
+        assertNotNull(claims.issuedAt());
+        assertTrue(claims.expiration().after(claims.issuedAt()));
+        assertTrue(jwtService.validateToken(token, "user@bank.com"));
+        assertFalse(jwtService.validateToken(token, "admin@bank.com"));
+    }
+
+    @Test
+    void testParseRejectsInvalidTokens() {
+        JwtService jwtService = jwtService(SECRET, 60_000);
+        String token = jwtService.generateToken(user());
+
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        assertTrue(jwtService.parse(tampered).isEmpty());
+        assertTrue(jwtService.parse("not-a-token").isEmpty());
+        assertTrue(jwtService.parse("").isEmpty());
+        assertNull(jwtService.extractUsername("not-a-token"));
+
+        String foreign = jwtService(OTHER_SECRET, 60_000).generateToken(user());
+        assertTrue(jwtService.parse(foreign).isEmpty());
+    }
+
+    @Test
+    void testParseRejectsExpiredToken() {
+        JwtService expired = jwtService(SECRET, -60_000);
+        String token = expired.generateToken(user());
+
+        assertTrue(expired.parse(token).isEmpty());
+        assertFalse(expired.validateToken(token, "user@bank.com"));
+    }
+
+    @Test
+    void testVerifyServesRepeatedTokenFromCache() {
+        JwtService jwtService = jwtService(SECRET, 60_000);
+        String token = jwtService.generateToken(user());
+
+        JwtClaims first = jwtService.verify(token).orElseThrow();
+        assertSame(first, jwtService.verify(token).orElseThrow());
+        assertTrue(jwtService.verify(token + "x").isEmpty());
+    }
+
+    @Test
+    void testVerifyWithoutCacheParsesEveryTime() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().getJwt().setSecret(SECRET);
+        appProperties.getSecurity().getJwt().setExpiration(60_000);
+        appProperties.getSecurity().getJwt().setCacheSize(0);
+        JwtService jwtService = new JwtService(appProperties);
+        String token = jwtService.generateToken(user());
+
+        JwtClaims first = jwtService.verify(token).orElseThrow();
+        JwtClaims second = jwtService.verify(token).orElseThrow();
+        assertNotSame(first, second);
+        assertEquals(first, second);
+    }
+
+    // Замер: mvn test -Dbench=true -Dtest=JwtServiceTest
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void testCompareParseOnceWithLegacyParsing() {
+        JwtService jwtService = jwtService(SECRET, 60_000);
+        String token = jwtService.generateToken(user());
+        int iterations = 200_000;
+
+        // Прогрев JIT для обоих вариантов
+        for (int i = 0; i < iterations / 10; i++) {
+            legacyFilter(token);
+            jwtService.parse(token);
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            legacyFilter(token);
+        }
+        double legacy = (System.nanoTime() - started) / (double) iterations;
+
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            jwtService.parse(token);
+        }
+        double parseOnce = (System.nanoTime() - started) / (double) iterations;
+
+        // Время зависит от машины и нагрузки на неё, поэтому числа только выводятся, а не сравниваются
+        logger.info("legacy: {} ns/request, parse once: {} ns/request", Math.round(legacy), Math.round(parseOnce));
+    }
+
+    // Прежний путь фильтра: три разбора, каждый со своим ключом и парсером
+    private void legacyFilter(String token) {
+        for (int i = 0; i < 3; i++) {
+            Jwts.parserBuilder()
+                    .setSigningKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+        }
+    }
+
+    private User user() {
+        User user = new User("user@bank.com", "secret");
+        user.setId(7L);
+        return user;
+    }
+
+    private JwtService jwtService(String secret, long expiration) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().getJwt().setSecret(secret);
+        appProperties.getSecurity().getJwt().setExpiration(expiration);
+        return new JwtService(appProperties);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bankcards;
+
+import com.example.bankcards.service.LastLoginRecorder;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LastLoginRecorderTest {
+
+    private final List<List<Object[]>> batches = new ArrayList<>();
+    private boolean failing;
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("connection lost");
+            }
+            batches.add(batchArgs);
+            return new int[batchArgs.size()];
+        }
+    };
+
+    @Test
+    void testRepeatedLoginsAreCoalescedIntoOneBatch() {
+        LastLoginRecorder recorder = new LastLoginRecorder(jdbcTemplate);
+        recorder.record(7L);
+        recorder.record(3L);
+        recorder.record(7L);
+
+        recorder.flush();
+        recorder.flush();
+
+        assertEquals(1, batches.size());
+        List<Object[]> rows = batches.get(0);
+        assertEquals(2, rows.size());
+        assertEquals(3L, rows.get(0)[1]);
+        assertEquals(7L, rows.get(1)[1]);
+    }
+
+    @Test
+    void testFailedFlushIsRetried() {
+        LastLoginRecorder recorder = new LastLoginRecorder(jdbcTemplate);
+        recorder.record(5L);
+
+        failing = true;
+        recorder.flush();
+        assertTrue(batches.isEmpty());
+
+        failing = false;
+        recorder.shutdown();
+        assertEquals(1, batches.size());
+        assertEquals(5L, batches.get(0).get(0)[1]);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.bankcards;
+
+import com.example.bankcards.dto.AuthenticationRequestDTO;
+import com.example.bankcards.dto.RegisterRequestDTO;
+import com.example.bankcards.exception.ServiceBusyException;
+import com.example.bankcards.service.AuthenticationService;
+import com.example.bankcards.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+@SpringBootTest
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class LoginBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginBenchmarkTest.class);
+
+    private static final String PASSWORD = "bench-password";
+    private static final int THREADS = 64;
+    private static final int LOGINS_PER_THREAD = 20;
+
+    @Autowired
+    private AuthenticationService authenticationService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String email;
+
+    @BeforeEach
+    void createUser() {
+        email = "bench-" + System.nanoTime() + "@bank.com";
+        userService.registerUser(new RegisterRequestDTO(email, PASSWORD));
+    }
+
+    @AfterEach
+    void dropUser() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id = (SELECT id FROM users WHERE email = ?)", email);
+        jdbcTemplate.update("DELETE FROM users WHERE email = ?", email);
+    }
+
+    @Test
+    void testLoginStormIsBoundedAndRejectedFast() throws Exception {
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicLong rejectNanos = new AtomicLong();
+        AtomicReference<Throwable> unexpected = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+
+        long started = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            clients.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < LOGINS_PER_THREAD; i++) {
+                        AuthenticationRequestDTO request = new AuthenticationRequestDTO();
+                        request.setEmail(email);
+                        request.setPassword(PASSWORD);
+                        long attempt = System.nanoTime();
+                        try {
+                            assertNotNull(authenticationService.authenticate(request).join().getToken());
+                            succeeded.incrementAndGet();
+                        } catch (ServiceBusyException e) {
+                            rejected.incrementAndGet();
+                            rejectNanos.addAndGet(System.nanoTime() - attempt);
+                        }
+                    }
+                } catch (Throwable e) {
+                    unexpected.compareAndSet(null, e);
+                }
+            });
+        }
+
+        start.countDown();
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(5, TimeUnit.MINUTES));
+        assertNull(unexpected.get());
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        logger.info("logins: {} ok ({}/s), {} rejected with 503 (avg {} ms)",
+                succeeded.get(), Math.round(succeeded.get() / seconds), rejected.get(),
+                rejected.get() == 0 ? 0 : String.format("%.2f", rejectNanos.get() / 1e6 / rejected.get()));
+
+        assertEquals(THREADS * LOGINS_PER_THREAD, succeeded.get() + rejected.get());
+        assertTrue(succeeded.get() > 0);
+    }
+}
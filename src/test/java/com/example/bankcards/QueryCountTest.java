@@ -0,0 +1,141 @@
+package com.example.bankcards;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.SecurityUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+@SpringBootTest(properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.bankcards.SqlStatementCounter")
+@AutoConfigureMockMvc
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class QueryCountTest {
+
+    // Пользователь, страница и count; число не должно зависеть от размера страницы
+    private static final int MAX_STATEMENTS = 4;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @WithMockUser(username = "user@bank.com")
+    void testUserEndpointsDoNotDependOnPageSize() throws Exception {
+        assertPageIndependent("/api/cards", "size");
+        assertPageIndependent("/api/cards/active", null);
+        assertPageIndependent("/api/transfers", "size");
+        assertPageIndependent("/api/transfers?sortBy=amount", "size");
+        assertPageIndependent("/api/transfers/cursor", "size");
+        assertPageIndependent("/api/transfers/recent", "limit");
+    }
+
+    @Test
+    @WithMockUser(username = "user@bank.com")
+    void testTransferPageOfHundredIsOneQuery() throws Exception {
+        List<Long> cardIds = createTransfers(101);
+        try {
+            SqlStatementCounter.reset();
+            mockMvc.perform(get("/api/transfers/cursor").param("size", "100"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content.length()").value(100));
+            assertEquals(1, SqlStatementCounter.count("transfers"), "страница по курсору");
+
+            // Переводов больше, чем помещается на страницу, поэтому count выполняется
+            SqlStatementCounter.reset();
+            mockMvc.perform(get("/api/transfers").param("size", "100"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content.length()").value(100));
+            assertEquals(1, SqlStatementCounter.count("count("), "count");
+            assertEquals(1, SqlStatementCounter.count("transfers") - SqlStatementCounter.count("count("), "страница");
+        } finally {
+            for (Long cardId : cardIds) {
+                jdbcTemplate.update("DELETE FROM transfers WHERE from_card_id = ? OR to_card_id = ?", cardId, cardId);
+                jdbcTemplate.update("DELETE FROM cards WHERE id = ?", cardId);
+            }
+        }
+    }
+
+    @Test
+    @WithMockUser(username = "admin@bank.com", roles = "ADMIN")
+    void testAdminEndpointsDoNotDependOnPageSize() throws Exception {
+        assertPageIndependent("/api/cards/admin/all", "size");
+        assertPageIndependent("/api/users", null);
+    }
+
+    // Две новые карты пользователя и переводы между ними; возвращает id карт для удаления
+    private List<Long> createTransfers(int count) {
+        User user = userRepository.findByEmail("user@bank.com").orElseThrow();
+        Card first = cardRepository.save(new Card("count-" + System.nanoTime() + "-0", "**** **** **** 0000",
+                "COUNT", LocalDate.now().plusYears(2), user));
+        Card second = cardRepository.save(new Card("count-" + System.nanoTime() + "-1", "**** **** **** 0001",
+                "COUNT", LocalDate.now().plusYears(2), user));
+
+        List<Transfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transfers.add(new Transfer(first, second, BigDecimal.ONE, null));
+        }
+        transferRepository.saveAll(transfers);
+        return List.of(first.getId(), second.getId());
+    }
+
+    private void assertPageIndependent(String url, String sizeParam) throws Exception {
+        int small = statements(url, sizeParam, 1);
+        int large = statements(url, sizeParam, 50);
+
+        assertEquals(small, large, url + ": " + small + " запросов при size=1, " + large + " при size=50");
+    }
+
+    // Запросы без count: Spring Data пропускает count, если выборка уместилась на первой странице,
+    // поэтому он проверяется отдельно и в сравнение размеров страниц не входит
+    private int statements(String url, String sizeParam, int size) throws Exception {
+        MockHttpServletRequestBuilder request = get(url);
+        if (sizeParam != null) {
+            request.param(sizeParam, String.valueOf(size));
+        }
+
+        SqlStatementCounter.reset();
+        MvcResult result = mockMvc.perform(request).andExpect(status().isOk()).andReturn();
+
+        assertTrue(SecurityUtils.getUserLookups(result.getRequest()) <= 1,
+                url + ": пользователь прочитан больше одного раза");
+        assertTrue(SqlStatementCounter.count("count(") <= 1, url + ": больше одного count");
+        assertTrue(SqlStatementCounter.count() <= MAX_STATEMENTS,
+                url + ": " + SqlStatementCounter.count() + " запросов при size=" + size);
+        return SqlStatementCounter.count() - SqlStatementCounter.count("count(");
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.security.JwtService;
+import com.example.bankcards.security.RateLimitFilter;
+import com.example.bankcards.security.RateLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilterTest.class);
+
+    private static final String SECRET = "mySuperSecretKeyForBankCardsApplication2024WithSpringBoot3AndJWT";
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testBurstIsAllowedThenRejectedUntilRefill() {
+        RateLimiter limiter = new RateLimiter(10, Duration.ofSeconds(10), 3,
+                1000, Duration.ofMinutes(1), clock::get);
+
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        long wait = limiter.tryAcquire("a");
+        assertEquals(TimeUnit.SECONDS.toNanos(1), wait);
+
+        // Другие ключи не делят корзину
+        assertEquals(0, limiter.tryAcquire("b"));
+
+        clock.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    void testNumberOfKeysIsBounded() {
+        RateLimiter limiter = new RateLimiter(10, Duration.ofSeconds(10), 3,
+                100, Duration.ofMinutes(1), clock::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire("ip-" + i);
+        }
+
+        assertTrue(limiter.size() <= 100);
+    }
+
+    @Test
+    void testLoginIsLimitedPerIp() throws Exception {
+        RateLimitFilter filter = filter(2);
+
+        assertEquals(200, login(filter, "10.0.0.1").getStatus());
+        assertEquals(200, login(filter, "10.0.0.1").getStatus());
+
+        MockHttpServletResponse rejected = login(filter, "10.0.0.1");
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeader("Retry-After"));
+        assertTrue(rejected.getContentAsString().contains("\"status\":429"));
+
+        assertEquals(200, login(filter, "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void testTransfersAreLimitedPerUser() throws Exception {
+        RateLimitFilter filter = filter(1);
+        String token = jwtService().generateToken(user());
+
+        assertEquals(200, transfer(filter, token, "/api/transfers", "10.0.0.1").getStatus());
+        // Смена IP не обходит лимит пользователя
+        assertEquals(429, transfer(filter, token, "/api/transfers", "10.0.0.2").getStatus());
+        // Без токена лимит не применяется, запрос отклонит аутентификация
+        assertEquals(200, transfer(filter, null, "/api/transfers", "10.0.0.1").getStatus());
+    }
+
+    @Test
+    void testBatchHasItsOwnStricterLimit() throws Exception {
+        RateLimitFilter filter = filter(5);
+        String token = jwtService().generateToken(user());
+
+        assertEquals(200, transfer(filter, token, "/api/transfers/batch").getStatus());
+        // Пакет не расходует корзину одиночных переводов, но второй пакет сразу не пройдёт
+        assertEquals(429, transfer(filter, token, "/api/transfers/batch").getStatus());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, transfer(filter, token, "/api/transfers").getStatus());
+        }
+        assertEquals(429, transfer(filter, token, "/api/transfers").getStatus());
+    }
+
+    // Замер: mvn test -Dbench=true -Dtest=RateLimitFilterTest
+    @Test
+    @EnabledIfSystemProperty(named = "bench", matches = "true")
+    void testRejectionCostUnderDistinctKeyAttack() throws Exception {
+        int keys = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int perThread = 1_000_000;
+        RateLimiter limiter = new RateLimiter(10, Duration.ofMinutes(1), 5,
+                keys, Duration.ofMinutes(10), System::nanoTime);
+
+        String[] ips = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            ips[i] = "/api/auth/login|10." + (i >> 16) + "." + ((i >> 8) & 255) + "." + (i & 255);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 7919;
+            futures.add(executor.submit(() -> {
+                int local = 0;
+                for (int i = 0; i < perThread; i++) {
+                    if (limiter.tryAcquire(ips[(offset + i) % keys]) > 0) {
+                        local++;
+                    }
+                }
+                rejected.addAndGet(local);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        long total = (long) threads * perThread;
+        double nanosPerDecision = (System.nanoTime() - started) / (double) perThread;
+        // Скорость зависит от машины, поэтому проверяется только доля отказов, а время пишется в лог
+        logger.info("{} keys, {} threads: {} ns/decision per thread, {} of {} rejected",
+                keys, threads, Math.round(nanosPerDecision), rejected.get(), total);
+        assertTrue(rejected.get() > total / 2);
+    }
+
+    private MockHttpServletResponse login(RateLimitFilter filter, String ip) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setRemoteAddr(ip);
+        return run(filter, request);
+    }
+
+    private MockHttpServletResponse transfer(RateLimitFilter filter, String token, String uri) throws Exception {
+        return transfer(filter, token, uri, "10.0.0.1");
+    }
+
+    private MockHttpServletResponse transfer(RateLimitFilter filter, String token, String uri, String ip)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setRemoteAddr(ip);
+        if (token != null) {
+            request.addHeader("Authorization", "Bearer " + token);
+        }
+        return run(filter, request);
+    }
+
+    private MockHttpServletResponse run(RateLimitFilter filter, MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> { });
+        return response;
+    }
+
+    private RateLimitFilter filter(int burst) {
+        AppProperties appProperties = properties();
+        AppProperties.Security.RateLimit rateLimit = appProperties.getSecurity().getRateLimit();
+        rateLimit.setAuthBurst(burst);
+        rateLimit.setTransferBurst(burst);
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        return new RateLimitFilter(appProperties, new JwtService(appProperties), objectMapper);
+    }
+
+    private JwtService jwtService() {
+        return new JwtService(properties());
+    }
+
+    private AppProperties properties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().getJwt().setSecret(SECRET);
+        appProperties.getSecurity().getJwt().setExpiration(60_000);
+        return appProperties;
+    }
+
+    private User user() {
+        User user = new User("user@bank.com", "secret");
+        user.setId(7L);
+        return user;
+    }
+}
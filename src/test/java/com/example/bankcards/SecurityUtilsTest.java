@@ -0,0 +1,127 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthenticatedUser;
+import com.example.bankcards.security.UserCache;
+import com.example.bankcards.util.SecurityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecurityUtilsTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private final SecurityUtils securityUtils = new SecurityUtils(userCache());
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testCurrentUserIsLoadedOncePerRequest() {
+        authenticate("user@bank.com", "ROLE_USER");
+
+        MockHttpServletRequest first = startRequest();
+        assertEquals(Long.valueOf(5), securityUtils.getCurrentUserId());
+        assertFalse(securityUtils.isAdmin());
+        assertTrue(securityUtils.isCurrentUser(5L));
+        assertEquals("user@bank.com", securityUtils.getCurrentUser().getEmail());
+        assertEquals(1, queries.get());
+        assertEquals(1, SecurityUtils.getUserLookups(first));
+
+        MockHttpServletRequest second = startRequest();
+        assertEquals(0, SecurityUtils.getUserLookups(second));
+        securityUtils.getCurrentUserId();
+        assertEquals(2, queries.get());
+        // Счётчик у каждого запроса свой
+        assertEquals(1, SecurityUtils.getUserLookups(first));
+        assertEquals(1, SecurityUtils.getUserLookups(second));
+    }
+
+    @Test
+    void testLookupCountIsReportedWhenRequestCompletes() {
+        authenticate("user@bank.com", "ROLE_USER");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        ServletRequestAttributes attributes = new ServletRequestAttributes(request);
+        RequestContextHolder.setRequestAttributes(attributes);
+
+        securityUtils.getCurrentUser();
+        // Другой email в том же запросе: мемоизированный пользователь не подходит
+        authenticate("admin@bank.com", "ROLE_ADMIN");
+        securityUtils.getCurrentUser();
+
+        assertEquals(2, SecurityUtils.getUserLookups(request));
+        assertDoesNotThrow(attributes::requestCompleted);
+    }
+
+    @Test
+    void testTokenPrincipalNeedsNoLookup() {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                new AuthenticatedUser(9L, "admin@bank.com"), null,
+                List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+
+        MockHttpServletRequest request = startRequest();
+        assertEquals(Long.valueOf(9), securityUtils.getCurrentUserId());
+        assertTrue(securityUtils.isAdmin());
+        assertEquals(0, queries.get());
+        assertEquals(0, SecurityUtils.getUserLookups(request));
+    }
+
+    @Test
+    void testWithoutRequestEveryCallQueries() {
+        authenticate("user@bank.com", "ROLE_USER");
+
+        securityUtils.getCurrentUser();
+        securityUtils.getCurrentUser();
+        assertEquals(2, queries.get());
+    }
+
+    private void authenticate(String email, String role) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                email, null, List.of(new SimpleGrantedAuthority(role))));
+    }
+
+    private MockHttpServletRequest startRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return request;
+    }
+
+    // Размер 0 отключает кэш: тест проверяет только мемоизацию на запрос
+    private UserCache userCache() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().setUserCacheSize(0);
+        return new UserCache(userRepository(), appProperties);
+    }
+
+    private UserRepository userRepository() {
+        return (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findByEmail")) {
+                        queries.incrementAndGet();
+                        User user = new User((String) args[0], "secret");
+                        user.setId(5L);
+                        user.addRole(Role.ROLE_USER);
+                        return Optional.of(user);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.bankcards;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Считает SQL, которые Hibernate отправляет в БД; подключается свойством
+// spring.jpa.properties.hibernate.session_factory.statement_inspector
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        statements.add(sql);
+        return sql;
+    }
+
+    public static void reset() {
+        statements.clear();
+    }
+
+    public static int count() {
+        return statements.size();
+    }
+
+    // Запросы, текст которых содержит фрагмент без учёта регистра
+    public static int count(String fragment) {
+        String expected = fragment.toLowerCase(Locale.ROOT);
+        return (int) statements.stream()
+                .filter(sql -> sql.toLowerCase(Locale.ROOT).contains(expected))
+                .count();
+    }
+}
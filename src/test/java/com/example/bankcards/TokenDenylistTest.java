@@ -0,0 +1,124 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.TokenRevocation;
+import com.example.bankcards.repository.TokenRevocationRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.TokenDenylist;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenDenylistTest {
+
+    private final List<Object[]> revocations = new ArrayList<>();
+    // Таблица token_revocations, общая для всех узлов
+    private final List<Object[]> deletedUserRevocations = new ArrayList<>();
+    private LocalDateTime purgeThreshold;
+
+    @Test
+    void testTokensIssuedBeforeRevocationAreRejected() {
+        TokenDenylist denylist = denylist();
+        LocalDateTime revokedAt = LocalDateTime.now().withNano(500_000_000);
+
+        denylist.revoke(1L, revokedAt);
+
+        assertTrue(denylist.isRevoked(1L, date(revokedAt.minusSeconds(1))));
+        // Токен выдан в ту же секунду, но раньше отзыва: iat не отличает его от более позднего
+        assertTrue(denylist.isRevoked(1L, date(revokedAt.minusNanos(400_000_000))));
+        assertTrue(denylist.isRevoked(1L, date(revokedAt.plusNanos(400_000_000))));
+        assertFalse(denylist.isRevoked(1L, date(revokedAt.plusSeconds(1))));
+        assertFalse(denylist.isRevoked(1L, date(revokedAt.plusMinutes(1))));
+        assertFalse(denylist.isRevoked(2L, date(revokedAt.minusSeconds(1))));
+    }
+
+    @Test
+    void testRefreshLoadsRevocationsFromOtherNodes() {
+        TokenDenylist denylist = denylist();
+        LocalDateTime revokedAt = LocalDateTime.now().withNano(0);
+        revocations.add(new Object[]{3L, revokedAt});
+
+        assertFalse(denylist.isRevoked(3L, date(revokedAt.minusMinutes(1))));
+        denylist.refresh();
+        assertTrue(denylist.isRevoked(3L, date(revokedAt.minusMinutes(1))));
+    }
+
+    @Test
+    void testRefreshDropsRevocationsOlderThanTokenLifetime() {
+        TokenDenylist denylist = denylist();
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(2);
+
+        denylist.revoke(4L, longAgo);
+        denylist.refresh();
+
+        assertFalse(denylist.isRevoked(4L, date(longAgo.minusSeconds(1))));
+    }
+
+    @Test
+    void testDeletedUserRevocationReachesOtherNodes() {
+        TokenDenylist deletingNode = denylist();
+        TokenDenylist otherNode = denylist();
+        LocalDateTime revokedAt = LocalDateTime.now().withNano(0);
+
+        // Строки пользователя больше нет, в users.tokens_revoked_at отзыва не найти
+        deletingNode.revokeDeleted(5L, revokedAt);
+        assertTrue(deletingNode.isRevoked(5L, date(revokedAt.minusSeconds(1))));
+
+        otherNode.refresh();
+        assertTrue(otherNode.isRevoked(5L, date(revokedAt.minusSeconds(1))));
+    }
+
+    @Test
+    void testPurgeRemovesRevocationsOlderThanTokenLifetime() {
+        TokenDenylist denylist = denylist();
+
+        denylist.purgeExpiredRevocations();
+
+        LocalDateTime expected = LocalDateTime.now().minusDays(1);
+        assertTrue(Duration.between(purgeThreshold, expected).abs().getSeconds() < 5);
+    }
+
+    private TokenDenylist denylist() {
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findTokenRevocationsSince")) {
+                        return revocations;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        TokenRevocationRepository tokenRevocationRepository = (TokenRevocationRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{TokenRevocationRepository.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "save": {
+                            TokenRevocation revocation = (TokenRevocation) args[0];
+                            deletedUserRevocations.add(new Object[]{revocation.getUserId(), revocation.getRevokedAt()});
+                            return revocation;
+                        }
+                        case "findRevocationsSince":
+                            return deletedUserRevocations;
+                        case "deleteRevokedBefore":
+                            purgeThreshold = (LocalDateTime) args[0];
+                            return 0;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getSecurity().getJwt().setExpiration(24 * 60 * 60 * 1000L);
+        return new TokenDenylist(userRepository, tokenRevocationRepository, appProperties);
+    }
+
+    private Date date(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferBatchResultDTO;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardTransferStatsRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.service.TransferProcessor;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferBatchTest {
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("100.00");
+
+    private final Map<Long, Card> cards = new HashMap<>();
+    private final List<List<Long>> lockedChunks = new ArrayList<>();
+    private final List<Transfer> committed = new ArrayList<>();
+    // Состояние открытой транзакции: исходные балансы и несохранённые переводы
+    private final Map<Long, BigDecimal> balancesAtBegin = new HashMap<>();
+    private final List<Transfer> uncommitted = new ArrayList<>();
+    private long nextTransferId = 1;
+
+    @Test
+    void testFailedChunkIsRetriedTransferByTransfer() {
+        User owner = user(1L);
+        User stranger = user(2L);
+        card(1L, owner);
+        card(2L, owner);
+        card(3L, owner);
+        card(4L, stranger);
+
+        List<TransferBatchResultDTO> results = processor(3).executeBatch(1L, List.of(
+                request(1L, 2L, "10", null),
+                request(1L, 2L, "1000", null),
+                // Инфраструктурная ошибка при INSERT откатывает весь первый чанк
+                request(2L, 3L, "5", "boom"),
+                request(1L, 4L, "5", null),
+                request(3L, 1L, "5", null)));
+
+        assertEquals(List.of("COMPLETED", "FAILED", "FAILED", "FAILED", "COMPLETED"),
+                results.stream().map(TransferBatchResultDTO::getStatus).toList());
+        assertEquals(List.of(0, 1, 2, 3, 4), results.stream().map(TransferBatchResultDTO::getIndex).toList());
+        assertNotNull(results.get(0).getTransferId());
+        assertEquals("INSUFFICIENT_FUNDS", results.get(1).getErrorCode());
+        assertEquals("INTERNAL_ERROR", results.get(2).getErrorCode());
+        assertEquals("ACCESS_DENIED", results.get(3).getErrorCode());
+
+        assertEquals(2, committed.size());
+        assertEquals(0, new BigDecimal("95.00").compareTo(cards.get(1L).getBalance()));
+        assertEquals(0, new BigDecimal("110.00").compareTo(cards.get(2L).getBalance()));
+        assertEquals(0, new BigDecimal("95.00").compareTo(cards.get(3L).getBalance()));
+        assertEquals(0, INITIAL_BALANCE.compareTo(cards.get(4L).getBalance()));
+    }
+
+    @Test
+    void testChunkCardsAreLockedOnceInIdOrder() {
+        User owner = user(1L);
+        card(1L, owner);
+        card(2L, owner);
+        card(3L, owner);
+
+        List<TransferBatchResultDTO> results = processor(2).executeBatch(1L, List.of(
+                request(3L, 1L, "1", null),
+                request(2L, 1L, "1", null),
+                request(2L, 3L, "1", null)));
+
+        assertTrue(results.stream().allMatch(result -> "COMPLETED".equals(result.getStatus())));
+        assertEquals(List.of(List.of(1L, 2L, 3L), List.of(2L, 3L)), lockedChunks);
+    }
+
+    private TransferProcessor processor(int chunkSize) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTransfers().setBatchChunkSize(chunkSize);
+        return new TransferProcessor(cardRepository(), transferRepository(), statsRepository(),
+                transactionManager(), appProperties);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CardRepository cardRepository() {
+        return (CardRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAllByIdInAndUserIdForUpdate": {
+                            List<Long> ids = new ArrayList<>((Collection<Long>) args[0]);
+                            lockedChunks.add(ids);
+                            return ids.stream()
+                                    .map(cards::get)
+                                    .filter(card -> card != null && card.getUserId().equals(args[1]))
+                                    .toList();
+                        }
+                        case "existsById":
+                            return cards.containsKey(args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private TransferRepository transferRepository() {
+        return (TransferRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("save")) {
+                        Transfer transfer = (Transfer) args[0];
+                        if ("boom".equals(transfer.getDescription())) {
+                            throw new DataAccessResourceFailureException("Connection reset");
+                        }
+                        transfer.setId(nextTransferId++);
+                        uncommitted.add(transfer);
+                        return transfer;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private CardTransferStatsRepository statsRepository() {
+        return (CardTransferStatsRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardTransferStatsRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("addActivity")) {
+                        return 1;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // Откат возвращает балансы карт и отбрасывает переводы, как закрытие EntityManager после rollback
+    private PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                balancesAtBegin.clear();
+                cards.forEach((id, card) -> balancesAtBegin.put(id, card.getBalance()));
+                uncommitted.clear();
+                return (TransactionStatus) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{TransactionStatus.class}, (proxy, method, args) ->
+                                method.getReturnType() == boolean.class ? false : null);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                committed.addAll(uncommitted);
+                uncommitted.clear();
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                balancesAtBegin.forEach((id, balance) -> cards.get(id).setBalance(balance));
+                uncommitted.clear();
+            }
+        };
+    }
+
+    private User user(Long id) {
+        User user = new User("user" + id + "@bank.com", "secret");
+        user.setId(id);
+        return user;
+    }
+
+    private void card(Long id, User owner) {
+        Card card = new Card("enc" + id, "**** **** **** 000" + id, "OWNER", LocalDate.now().plusYears(3), owner);
+        card.setId(id);
+        card.setBalance(INITIAL_BALANCE);
+        cards.put(id, card);
+    }
+
+    private TransferRequestDTO request(Long from, Long to, String amount, String description) {
+        TransferRequestDTO request = new TransferRequestDTO();
+        request.setFromCardId(from);
+        request.setToCardId(to);
+        request.setAmount(new BigDecimal(amount));
+        request.setDescription(description);
+        return request;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.TransferProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+// Встречные переводы между несколькими картами проверяют блокировки InnoDB, детектор deadlock и повторы
+@SpringBootTest
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class TransferConcurrencyMySqlTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferConcurrencyMySqlTest.class);
+
+    private static final long USER_ID = 2L;
+    private static final int CARDS = 6;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 100;
+    // Небольшой баланс: часть переводов упирается в нехватку средств
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("500.00");
+
+    @Autowired
+    private TransferProcessor transferProcessor;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AppProperties appProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Long> cardIds = new ArrayList<>();
+    private AppProperties.Transfers.Strategy configuredStrategy;
+
+    @BeforeEach
+    void createCards() {
+        configuredStrategy = appProperties.getTransfers().getStrategy();
+        for (int i = 0; i < CARDS; i++) {
+            Card card = new Card("race-" + System.nanoTime() + "-" + i, "**** **** **** 000" + i, "RACE",
+                    LocalDate.now().plusYears(2), userRepository.getReferenceById(USER_ID));
+            card.setBalance(INITIAL_BALANCE);
+            cardIds.add(cardRepository.save(card).getId());
+        }
+    }
+
+    @AfterEach
+    void dropCards() {
+        appProperties.getTransfers().setStrategy(configuredStrategy);
+        for (Long cardId : cardIds) {
+            jdbcTemplate.update("DELETE FROM transfers WHERE from_card_id = ? OR to_card_id = ?", cardId, cardId);
+            jdbcTemplate.update("DELETE FROM card_transfer_stats WHERE card_id = ?", cardId);
+            jdbcTemplate.update("DELETE FROM cards WHERE id = ?", cardId);
+        }
+    }
+
+    @Test
+    void testLockingStrategyConservesMoney() throws Exception {
+        assertConservedUnderLoad(AppProperties.Transfers.Strategy.LOCKING);
+    }
+
+    @Test
+    void testAtomicStrategyConservesMoney() throws Exception {
+        assertConservedUnderLoad(AppProperties.Transfers.Strategy.ATOMIC);
+    }
+
+    private void assertConservedUnderLoad(AppProperties.Transfers.Strategy strategy) throws Exception {
+        appProperties.getTransfers().setStrategy(strategy);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(CARDS);
+                    int to = random.nextInt(CARDS - 1);
+                    if (to >= from) {
+                        to++;
+                    }
+                    TransferRequestDTO request = new TransferRequestDTO();
+                    request.setFromCardId(cardIds.get(from));
+                    request.setToCardId(cardIds.get(to));
+                    request.setAmount(BigDecimal.valueOf(random.nextInt(1, 150)));
+                    try {
+                        transferProcessor.execute(USER_ID, request);
+                        completed.incrementAndGet();
+                    } catch (InsufficientBalanceException e) {
+                        rejected.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Исчерпанные повторы блокировки откатывают перевод целиком
+                        failed.incrementAndGet();
+                        logger.warn("{}: transfer failed: {}", strategy, e.getMessage());
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES), "Переводы не завершились");
+        logger.info("{}: {} completed, {} rejected, {} failed", strategy, completed.get(), rejected.get(), failed.get());
+
+        List<BigDecimal> balances = cardIds.stream()
+                .map(id -> cardRepository.findBalanceById(id).orElseThrow())
+                .toList();
+        BigDecimal total = balances.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(CARDS)).compareTo(total));
+        assertTrue(balances.stream().allMatch(balance -> balance.signum() >= 0), "Отрицательный баланс: " + balances);
+
+        assertEquals(THREADS * TRANSFERS_PER_THREAD, completed.get() + rejected.get() + failed.get());
+        Integer stored = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transfers WHERE status = 'COMPLETED' " +
+                "AND from_card_id IN (" + placeholders() + ")", Integer.class, cardIds.toArray());
+        assertEquals(completed.get(), stored);
+    }
+
+    private String placeholders() {
+        return String.join(", ", cardIds.stream().map(id -> "?").toList());
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStatus;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardTransferStatsRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.service.TransferProcessor;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferConcurrencyTest {
+
+    private static final int CARDS = 8;
+    private static final int THREADS = 64;
+    private static final int TRANSFERS_PER_THREAD = 200;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000.00");
+
+    private final Map<Long, Card> cards = new HashMap<>();
+    private final Map<Long, ReentrantLock> rowLocks = new HashMap<>();
+    private final ThreadLocal<Deque<ReentrantLock>> heldLocks = ThreadLocal.withInitial(ArrayDeque::new);
+    private final AtomicInteger lockTimeouts = new AtomicInteger();
+    private final AtomicInteger savedTransfers = new AtomicInteger();
+    private final AtomicReference<BigDecimal> statsSent = new AtomicReference<>(BigDecimal.ZERO);
+    private final AtomicReference<BigDecimal> statsReceived = new AtomicReference<>(BigDecimal.ZERO);
+    private final AtomicLong statsTransfers = new AtomicLong();
+
+    @Test
+    void testConcurrentTransfersConserveMoney() throws Exception {
+        User owner = new User("owner@bank.com", "secret");
+        owner.setId(1L);
+        for (long id = 1; id <= CARDS; id++) {
+            Card card = new Card("enc" + id, "**** **** **** 000" + id, "OWNER",
+                    LocalDate.now().plusYears(3), owner);
+            card.setId(id);
+            card.setStatus(CardStatus.ACTIVE);
+            card.setBalance(INITIAL_BALANCE);
+            cards.put(id, card);
+            rowLocks.put(id, new ReentrantLock());
+        }
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTransfers().setStrategy(AppProperties.Transfers.Strategy.LOCKING);
+        TransferProcessor processor = new TransferProcessor(
+                cardRepository(), transferRepository(), statsRepository(), transactionManager(), appProperties);
+
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicReference<Throwable> unexpected = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        long from = random.nextLong(1, CARDS + 1);
+                        long to = random.nextLong(1, CARDS);
+                        if (to >= from) {
+                            to++;
+                        }
+                        TransferRequestDTO request = new TransferRequestDTO();
+                        request.setFromCardId(from);
+                        request.setToCardId(to);
+                        request.setAmount(BigDecimal.valueOf(random.nextInt(1, 200)));
+                        try {
+                            processor.execute(1L, request);
+                            completed.incrementAndGet();
+                        } catch (InsufficientBalanceException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    unexpected.compareAndSet(null, e);
+                }
+            });
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES), "Переводы не завершились");
+        assertNull(unexpected.get());
+
+        BigDecimal total = cards.values().stream()
+                .map(Card::getBalance)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        assertEquals(INITIAL_BALANCE.multiply(BigDecimal.valueOf(CARDS)), total);
+        assertTrue(cards.values().stream().allMatch(c -> c.getBalance().signum() >= 0));
+        assertEquals(THREADS * TRANSFERS_PER_THREAD, completed.get() + rejected.get());
+        assertEquals(completed.get(), savedTransfers.get());
+        assertEquals(0, lockTimeouts.get(), "Упорядоченные блокировки не должны упираться в таймаут");
+        assertEquals(0, statsSent.get().compareTo(statsReceived.get()));
+        assertEquals(completed.get(), statsTransfers.get());
+    }
+
+    // Имитация SELECT ... FOR UPDATE: блокировка строки держится до конца транзакции
+    private CardRepository cardRepository() {
+        return (CardRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findByIdAndUserIdForUpdate": {
+                            Long cardId = (Long) args[0];
+                            ReentrantLock lock = rowLocks.get(cardId);
+                            if (!lock.tryLock(1, TimeUnit.SECONDS)) {
+                                lockTimeouts.incrementAndGet();
+                                throw new CannotAcquireLockException("Lock wait timeout exceeded");
+                            }
+                            heldLocks.get().push(lock);
+                            Card card = cards.get(cardId);
+                            return Optional.of(card).filter(c -> c.getUser().getId().equals(args[1]));
+                        }
+                        case "existsById":
+                            return cards.containsKey(args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private TransferRepository transferRepository() {
+        return (TransferRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("save")) {
+                        savedTransfers.incrementAndGet();
+                        return (Transfer) args[0];
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private CardTransferStatsRepository statsRepository() {
+        return (CardTransferStatsRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CardTransferStatsRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("addActivity")) {
+                        statsSent.accumulateAndGet((BigDecimal) args[1], BigDecimal::add);
+                        statsReceived.accumulateAndGet((BigDecimal) args[3], BigDecimal::add);
+                        statsTransfers.addAndGet((Long) args[2]);
+                        return 1;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return (TransactionStatus) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{TransactionStatus.class}, (proxy, method, args) ->
+                                method.getReturnType() == boolean.class ? false : null);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                releaseLocks();
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                releaseLocks();
+            }
+
+            private void releaseLocks() {
+                Deque<ReentrantLock> locks = heldLocks.get();
+                while (!locks.isEmpty()) {
+                    locks.pop().unlock();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.bankcards;
+
+import com.example.bankcards.controller.TransferController;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferSliceDTO;
+import com.example.bankcards.dto.TransferView;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.service.TransferService;
+import com.example.bankcards.util.SecurityUtils;
+import com.example.bankcards.util.TransferCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferCursorTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private final List<TransferView> history = new ArrayList<>();
+
+    @Test
+    void testCursorRoundTrip() {
+        TransferCursor cursor = TransferCursor.after(NOON.plusNanos(123456000), 42L);
+
+        TransferCursor decoded = TransferCursor.decode(cursor.encode());
+
+        assertEquals(NOON.plusNanos(123456000), decoded.getCreatedAt());
+        assertEquals(42L, decoded.getId());
+        assertFalse(cursor.encode().contains("="), "Курсор передаётся в URL без padding");
+    }
+
+    @Test
+    void testEmptyCursorIsFirstPage() {
+        assertSame(TransferCursor.FIRST, TransferCursor.decode(null));
+        assertSame(TransferCursor.FIRST, TransferCursor.decode(""));
+    }
+
+    @Test
+    void testMalformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> TransferCursor.decode("не base64"));
+        assertThrows(IllegalArgumentException.class, () -> TransferCursor.decode(encode("2024-05-01T12:00")));
+        assertThrows(IllegalArgumentException.class, () -> TransferCursor.decode(encode("вчера|1")));
+        assertThrows(IllegalArgumentException.class, () -> TransferCursor.decode(encode("2024-05-01T12:00|x")));
+    }
+
+    @Test
+    void testPagesSplitTransfersWithSameTimestamp() {
+        // Три перевода в одну и ту же секунду попадают на границу страниц
+        transfer(1L, NOON.minusMinutes(1));
+        transfer(2L, NOON);
+        transfer(3L, NOON);
+        transfer(4L, NOON);
+        transfer(5L, NOON.plusMinutes(1));
+
+        List<Long> ids = new ArrayList<>();
+        List<Boolean> hasNext = new ArrayList<>();
+        String after = "";
+        while (after != null) {
+            TransferSliceDTO<TransferDTO> slice = transferService().getUserTransfers(after, 2);
+            slice.getContent().forEach(transfer -> ids.add(transfer.getId()));
+            hasNext.add(slice.isHasNext());
+            after = slice.getNextCursor();
+        }
+
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), ids);
+        assertEquals(List.of(true, true, false), hasNext);
+    }
+
+    @Test
+    void testLastFullPageHasNoNextCursor() {
+        transfer(1L, NOON);
+        transfer(2L, NOON.plusMinutes(1));
+
+        TransferSliceDTO<TransferDTO> slice = transferService().getUserTransfers("", 2);
+
+        assertEquals(2, slice.getContent().size());
+        assertFalse(slice.isHasNext());
+        assertNull(slice.getNextCursor());
+    }
+
+    @Test
+    void testCursorEndpointRejectsSort() {
+        TransferController controller = new TransferController(transferService());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> controller.getUserTransfersAfter("", 10, "amount", null));
+        assertThrows(IllegalArgumentException.class,
+                () -> controller.getUserTransfersAfter("", 10, null, Sort.Direction.ASC));
+        assertThrows(IllegalArgumentException.class,
+                () -> controller.getUserTransfers(0, 10, "createdAt", Sort.Direction.DESC, ""));
+    }
+
+    private String encode(String value) {
+        return Base64.getUrlEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void transfer(Long id, LocalDateTime createdAt) {
+        history.add((TransferView) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferView.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "getCreatedAt" -> createdAt;
+                    case "getAmount" -> BigDecimal.ONE;
+                    case "getStatus" -> "COMPLETED";
+                    default -> null;
+                }));
+    }
+
+    private TransferService transferService() {
+        SecurityUtils securityUtils = new SecurityUtils(null) {
+            @Override
+            public Long getCurrentUserId() {
+                return 1L;
+            }
+        };
+        return new TransferService(transferRepository(), null, securityUtils, null, null, null, null, null);
+    }
+
+    // Повторяет условие BEFORE_CURSOR и порядок NEWEST_FIRST из TransferRepository
+    private TransferRepository transferRepository() {
+        return (TransferRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findUserHistoryBefore")) {
+                        LocalDateTime createdAt = (LocalDateTime) args[1];
+                        Long id = (Long) args[2];
+                        return history.stream()
+                                .filter(t -> t.getCreatedAt().isBefore(createdAt)
+                                        || (t.getCreatedAt().equals(createdAt) && t.getId() < id))
+                                .sorted(Comparator.comparing(TransferView::getCreatedAt)
+                                        .thenComparing(TransferView::getId).reversed())
+                                .limit((Integer) args[3])
+                                .toList();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.exception.ServiceBusyException;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.service.TransferExporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferExporterTest {
+
+    private final TransferExporter exporter = exporter();
+
+    @Test
+    void testSecondConcurrentExportIsRejected() {
+        exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+
+        assertThrows(ServiceBusyException.class,
+                () -> exporter.export(TransferExporter.Format.CSV, 1L, null, null, null));
+    }
+
+    @Test
+    void testWrittenExportReleasesSlotOnce() throws Exception {
+        TransferExporter.ExportBody first = exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        first.writeTo(out);
+        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("id,created_at,"));
+
+        exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+        // Завершение асинхронной обработки первой выгрузки не освобождает слот второй
+        first.afterCompletion(null, null);
+
+        assertThrows(ServiceBusyException.class,
+                () -> exporter.export(TransferExporter.Format.CSV, 1L, null, null, null));
+    }
+
+    @Test
+    void testExportStartedButNeverWrittenReleasesSlot() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, new MockHttpServletResponse()));
+        // Исполнитель не запускает задачу: тело так и не будет записано
+        asyncManager.setTaskExecutor(new TaskExecutorAdapter(task -> { }));
+
+        TransferExporter.ExportBody body = exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+        asyncManager.registerCallableInterceptor(TransferExporter.class.getName(), body);
+        asyncManager.startCallableProcessing(() -> {
+            body.writeTo(new ByteArrayOutputStream());
+            return null;
+        });
+
+        // Таймаут асинхронного запроса, затем его завершение контейнером
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        asyncContext.complete();
+
+        assertDoesNotThrow(() -> exporter.export(TransferExporter.Format.CSV, 1L, null, null, null));
+    }
+
+    @Test
+    void testExportExtendsOnlyItsOwnAsyncTimeout() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        StandardServletAsyncWebRequest asyncWebRequest =
+                new StandardServletAsyncWebRequest(request, new MockHttpServletResponse());
+        // Стандартный таймаут, выставленный RequestMappingHandlerAdapter
+        asyncWebRequest.setTimeout(30_000L);
+        asyncManager.setAsyncWebRequest(asyncWebRequest);
+        asyncManager.setTaskExecutor(new TaskExecutorAdapter(task -> { }));
+
+        TransferExporter.ExportBody body = exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+        asyncManager.registerCallableInterceptor(TransferExporter.class.getName(), body);
+        asyncManager.startCallableProcessing(() -> null);
+
+        assertEquals(Duration.ofHours(1).toMillis(), request.getAsyncContext().getTimeout());
+    }
+
+    @Test
+    void testAbandonedExportIsNotWrittenLater() throws Exception {
+        TransferExporter.ExportBody abandoned = exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+        abandoned.afterCompletion(null, null);
+        exporter.export(TransferExporter.Format.CSV, 1L, null, null, null);
+
+        // Запоздавший запуск тела ничего не пишет и не отдаёт чужой слот
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        abandoned.writeTo(out);
+
+        assertEquals(0, out.size());
+        assertThrows(ServiceBusyException.class,
+                () -> exporter.export(TransferExporter.Format.CSV, 1L, null, null, null));
+    }
+
+    private TransferExporter exporter() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTransfers().setExportMaxConcurrent(1);
+        TransferRepository transferRepository = (TransferRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{TransferRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("streamUserTransfers")) {
+                        return Stream.empty();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new TransferExporter(transferRepository, transactionManager(), new ObjectMapper(), appProperties);
+    }
+
+    private PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return (TransactionStatus) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{TransactionStatus.class}, (proxy, method, args) ->
+                                method.getReturnType() == boolean.class ? false : null);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+}
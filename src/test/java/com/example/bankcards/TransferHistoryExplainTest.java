@@ -0,0 +1,61 @@
+package com.example.bankcards;
+
+import com.example.bankcards.repository.TransferRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+@SpringBootTest
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class TransferHistoryExplainTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testUserHistoryUsesIndexes() {
+        assertNoFullScan(TransferRepository.USER_HISTORY);
+        assertNoFullScan(TransferRepository.USER_HISTORY_BEFORE);
+        assertNoFullScan(TransferRepository.USER_HISTORY_COUNT);
+        assertNoFullScan(TransferRepository.USER_EXPORT);
+    }
+
+    @Test
+    void testCardHistoryUsesIndexes() {
+        assertNoFullScan(TransferRepository.CARD_HISTORY);
+        assertNoFullScan(TransferRepository.CARD_HISTORY_BEFORE);
+        assertNoFullScan(TransferRepository.CARD_HISTORY_COUNT);
+        assertNoFullScan(TransferRepository.CARD_EXPORT);
+    }
+
+    private void assertNoFullScan(String sql) {
+        String explained = sql
+                .replace(":userId", "2")
+                .replace(":cardId", "1")
+                .replace(":limit", "20")
+                .replace(":createdAt", "'2030-01-01 00:00:00'")
+                .replace(":from", "'2000-01-01 00:00:00'")
+                .replace(":to", "'2030-01-01 00:00:00'")
+                .replace(":id", String.valueOf(Long.MAX_VALUE));
+
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + explained);
+        assertFalse(plan.isEmpty());
+
+        // Строки производных таблиц (<derived2>, <union2,3>) читаются из памяти, проверяем только transfers
+        for (Map<String, Object> row : plan) {
+            Object table = row.get("table");
+            if ("t".equals(table) || "transfers".equals(table)) {
+                assertNotEquals("ALL", row.get("type"), "Полный просмотр transfers: " + row + "\n" + explained);
+                assertNotNull(row.get("key"), "Запрос не использует индекс: " + row + "\n" + explained);
+            }
+        }
+    }
+}
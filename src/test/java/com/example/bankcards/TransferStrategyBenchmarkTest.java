@@ -0,0 +1,136 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.TransferProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+@SpringBootTest
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class TransferStrategyBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferStrategyBenchmarkTest.class);
+
+    private static final long USER_ID = 2L;
+    private static final int CARDS = 4;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 500;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000.00");
+
+    @Autowired
+    private TransferProcessor transferProcessor;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AppProperties appProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Long> cardIds = new ArrayList<>();
+    private AppProperties.Transfers.Strategy configuredStrategy;
+
+    @BeforeEach
+    void createCards() {
+        configuredStrategy = appProperties.getTransfers().getStrategy();
+        for (int i = 0; i < CARDS; i++) {
+            Card card = new Card("bench-" + System.nanoTime() + "-" + i, "**** **** **** 000" + i, "BENCH",
+                    LocalDate.now().plusYears(2), userRepository.getReferenceById(USER_ID));
+            card.setBalance(INITIAL_BALANCE);
+            cardIds.add(cardRepository.save(card).getId());
+        }
+    }
+
+    @AfterEach
+    void dropCards() {
+        appProperties.getTransfers().setStrategy(configuredStrategy);
+        for (Long cardId : cardIds) {
+            jdbcTemplate.update("DELETE FROM transfers WHERE from_card_id = ? OR to_card_id = ?", cardId, cardId);
+            jdbcTemplate.update("DELETE FROM cards WHERE id = ?", cardId);
+        }
+    }
+
+    @Test
+    void testCompareLockingAndAtomicStrategies() throws Exception {
+        double locking = run(AppProperties.Transfers.Strategy.LOCKING);
+        double atomic = run(AppProperties.Transfers.Strategy.ATOMIC);
+
+        logger.info("LOCKING: {} transfers/s, ATOMIC: {} transfers/s", Math.round(locking), Math.round(atomic));
+
+        BigDecimal total = cardIds.stream()
+                .map(id -> cardRepository.findBalanceById(id).orElseThrow())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(CARDS)).compareTo(total));
+    }
+
+    private double run(AppProperties.Transfers.Strategy strategy) throws Exception {
+        appProperties.getTransfers().setStrategy(strategy);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        long started = System.nanoTime();
+
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            futures.add(pool.submit(() -> {
+                int completed = 0;
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    TransferRequestDTO request = new TransferRequestDTO();
+                    request.setFromCardId(cardIds.get((offset + i) % CARDS));
+                    request.setToCardId(cardIds.get((offset + i + 1) % CARDS));
+                    request.setAmount(BigDecimal.TEN);
+                    try {
+                        transferProcessor.execute(USER_ID, request);
+                        completed++;
+                    } catch (RuntimeException e) {
+                        // Неудачный перевод не останавливает поток и не попадает в пропускную способность
+                        failed.incrementAndGet();
+                    }
+                }
+                return completed;
+            }));
+        }
+
+        int completed = 0;
+        try {
+            for (Future<Integer> future : futures) {
+                completed += future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        if (failed.get() > 0) {
+            logger.warn("{}: {} of {} transfers failed", strategy, failed.get(), THREADS * TRANSFERS_PER_THREAD);
+        }
+        return completed / seconds;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.bankcards;
+
+import com.example.bankcards.dto.TransferRequestDTO;
+import com.example.bankcards.dto.TransferSummaryDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transfer;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransferRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardTransferStatsService;
+import com.example.bankcards.service.TransferProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запускается только на реальной MySQL: mvn test -Dit.mysql=true
+@SpringBootTest
+@EnabledIfSystemProperty(named = "it.mysql", matches = "true")
+class TransferSummaryTest {
+
+    private static final long USER_ID = 2L;
+
+    @Autowired
+    private TransferProcessor transferProcessor;
+
+    @Autowired
+    private CardTransferStatsService cardTransferStatsService;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Card first;
+    private Card second;
+
+    @BeforeEach
+    void createCards() {
+        first = card(0);
+        second = card(1);
+    }
+
+    @AfterEach
+    void dropCards() {
+        for (Card card : new Card[]{first, second}) {
+            jdbcTemplate.update("DELETE FROM transfers WHERE from_card_id = ? OR to_card_id = ?",
+                    card.getId(), card.getId());
+            jdbcTemplate.update("DELETE FROM card_transfer_stats WHERE card_id = ?", card.getId());
+            jdbcTemplate.update("DELETE FROM cards WHERE id = ?", card.getId());
+        }
+    }
+
+    @Test
+    void testSummaryCountsOnlyCompletedTransfers() {
+        transferProcessor.execute(USER_ID, request(first, second, "10.00"));
+        transferProcessor.execute(USER_ID, request(first, second, "5.50"));
+        transferProcessor.execute(USER_ID, request(second, first, "3.00"));
+        saveTransfer(first, second, "PENDING");
+        saveTransfer(first, second, "FAILED");
+
+        assertCompletedOnly(cardTransferStatsService.getSummary(first.getId()));
+
+        // Полный пересчёт из transfers тоже пропускает PENDING и FAILED
+        cardTransferStatsService.rebuild();
+        assertCompletedOnly(cardTransferStatsService.getSummary(first.getId()));
+        List<Long> inconsistent = cardTransferStatsService.findInconsistentCards();
+        assertFalse(inconsistent.contains(first.getId()));
+        assertFalse(inconsistent.contains(second.getId()));
+    }
+
+    @Test
+    void testSummaryOfCardWithoutTransfersIsEmpty() {
+        saveTransfer(first, second, "FAILED");
+        cardTransferStatsService.rebuild();
+
+        TransferSummaryDTO summary = cardTransferStatsService.getSummary(second.getId());
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(summary.getTotalSent()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(summary.getTotalReceived()));
+        assertEquals(0, summary.getSentCount());
+        assertEquals(0, summary.getReceivedCount());
+        assertNull(summary.getFirstTransferAt());
+        assertNull(summary.getLastTransferAt());
+    }
+
+    private void assertCompletedOnly(TransferSummaryDTO summary) {
+        assertEquals(0, new BigDecimal("15.50").compareTo(summary.getTotalSent()));
+        assertEquals(2, summary.getSentCount());
+        assertEquals(0, new BigDecimal("3.00").compareTo(summary.getTotalReceived()));
+        assertEquals(1, summary.getReceivedCount());
+        assertNotNull(summary.getFirstTransferAt());
+        assertFalse(summary.getLastTransferAt().isBefore(summary.getFirstTransferAt()));
+    }
+
+    private Card card(int index) {
+        Card card = new Card("summary-" + System.nanoTime() + "-" + index, "**** **** **** 000" + index, "SUMMARY",
+                LocalDate.now().plusYears(2), userRepository.getReferenceById(USER_ID));
+        card.setBalance(new BigDecimal("1000.00"));
+        return cardRepository.save(card);
+    }
+
+    // Пишет перевод напрямую, минуя TransferProcessor и card_transfer_stats
+    private void saveTransfer(Card from, Card to, String status) {
+        Transfer transfer = new Transfer(from, to, new BigDecimal("100.00"), null);
+        transfer.setStatus(status);
+        transfer.setCreatedAt(LocalDateTime.now());
+        transferRepository.save(transfer);
+    }
+
+    private TransferRequestDTO request(Card from, Card to, String amount) {
+        TransferRequestDTO request = new TransferRequestDTO();
+        request.setFromCardId(from.getId());
+        request.setToCardId(to.getId());
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards;
+
+import com.example.bankcards.config.AppProperties;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.UserCache;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @Test
+    void testRepeatedLookupsHitCacheUntilEvicted() {
+        UserCache userCache = new UserCache(userRepository(), new AppProperties());
+
+        User first = userCache.findByEmail("user@bank.com").orElseThrow();
+        assertSame(first, userCache.findByEmail("user@bank.com").orElseThrow());
+        assertEquals(1, queries.get());
+
+        userCache.evict("user@bank.com");
+        assertNotSame(first, userCache.findByEmail("user@bank.com").orElseThrow());
+        assertEquals(2, queries.get());
+
+        assertEquals(1L, userCache.getStats().get("hitCount").longValue());
+        assertEquals(2L, userCache.getStats().get("missCount").longValue());
+    }
+
+    @Test
+    void testMissingUserIsNotCached() {
+        UserCache userCache = new UserCache(userRepository(), new AppProperties());
+
+        assertTrue(userCache.findByEmail("nobody@bank.com").isEmpty());
+        assertTrue(userCache.findByEmail("nobody@bank.com").isEmpty());
+        assertEquals(2, queries.get());
+    }
+
+    private UserRepository userRepository() {
+        return (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findByEmail")) {
+                        queries.incrementAndGet();
+                        String email = (String) args[0];
+                        return email.startsWith("nobody") ? Optional.empty() : Optional.of(new User(email, "secret"));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}